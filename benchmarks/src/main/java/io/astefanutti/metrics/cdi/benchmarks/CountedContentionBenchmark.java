@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.benchmarks;
+
+import org.jboss.weld.environment.se.Weld;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Measures how the throughput of a non-monotonic @Counted method scales with the number of threads
+// calling it concurrently, compared to a single shared atomic counter incremented and decremented
+// around the same call. The Metrics counters are backed by striped cells so that the threads
+// do not contend on the same cache line.
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CountedContentionBenchmark {
+
+    private Weld weld;
+
+    private InstrumentedBean bean;
+
+    private final AtomicLong atomic = new AtomicLong();
+
+    private long value = 42L;
+
+    @Setup
+    public void start() {
+        weld = WeldContainers.weld();
+        bean = weld.initialize().instance().select(InstrumentedBean.class).get();
+    }
+
+    @TearDown
+    public void stop() {
+        weld.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long countedOneThread() {
+        return bean.counted(value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long countedFourThreads() {
+        return bean.counted(value);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long countedMaxThreads() {
+        return bean.counted(value);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long atomicOneThread() {
+        return atomic();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long atomicFourThreads() {
+        return atomic();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long atomicMaxThreads() {
+        return atomic();
+    }
+
+    private long atomic() {
+        atomic.incrementAndGet();
+        try {
+            return bean.uninstrumented(value);
+        } finally {
+            atomic.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.benchmarks;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.LongGauge;
+import org.jboss.weld.environment.se.Weld;
+import org.jboss.weld.environment.se.WeldContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Measures the cost of polling a gauge registered for a @Gauge method, as reporters do.
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GaugeBenchmark {
+
+    private Weld weld;
+
+    private GaugeBean bean;
+
+    private Gauge<?> gauge;
+
+    @Setup
+    public void start() {
+        weld = WeldContainers.weld();
+        WeldContainer container = weld.initialize();
+        bean = container.instance().select(GaugeBean.class).get();
+        // Let's trigger the instantiation of the application scoped bean explicitly
+        bean.gauge();
+        gauge = container.instance().select(MetricRegistry.class).get().getGauges().get(GaugeBean.GAUGE_NAME);
+    }
+
+    @TearDown
+    public void stop() {
+        weld.shutdown();
+    }
+
+    @Benchmark
+    public long direct() {
+        return bean.gauge();
+    }
+
+    @Benchmark
+    public Object boxed() {
+        return gauge.getValue();
+    }
+
+    @Benchmark
+    public long primitive() {
+        return ((LongGauge) gauge).getLongValue();
+    }
+}
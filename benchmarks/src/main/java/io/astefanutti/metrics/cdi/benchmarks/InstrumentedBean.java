@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.benchmarks;
+
+import com.codahale.metrics.annotation.Counted;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+import io.astefanutti.metrics.cdi.MetricSampling;
+
+import javax.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class InstrumentedBean {
+
+    public long uninstrumented(long value) {
+        return value;
+    }
+
+    @Timed(name = "timed")
+    public long timed(long value) {
+        return value;
+    }
+
+    @Timed(name = "sampledTimed")
+    @MetricSampling(every = 100)
+    public long sampledTimed(long value) {
+        return value;
+    }
+
+    @Counted(name = "counted")
+    public long counted(long value) {
+        return value;
+    }
+
+    @Counted(name = "monotonicCounted", monotonic = true)
+    public long monotonicCounted(long value) {
+        return value;
+    }
+
+    @Metered(name = "metered")
+    public long metered(long value) {
+        return value;
+    }
+
+    @ExceptionMetered(name = "exceptionMetered")
+    public long exceptionMetered(long value) {
+        return value;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.benchmarks;
+
+import org.jboss.weld.environment.se.Weld;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Measures the per-invocation latency of each interceptor compared to an uninstrumented method.
+// Run with the GC profiler, i.e. -prof gc, to measure the allocation rate.
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InterceptorBenchmark {
+
+    private Weld weld;
+
+    private InstrumentedBean bean;
+
+    private long value = 42L;
+
+    @Setup
+    public void start() {
+        weld = WeldContainers.weld();
+        bean = weld.initialize().instance().select(InstrumentedBean.class).get();
+    }
+
+    @TearDown
+    public void stop() {
+        weld.shutdown();
+    }
+
+    @Benchmark
+    public long uninstrumented() {
+        return bean.uninstrumented(value);
+    }
+
+    @Benchmark
+    public long timed() {
+        return bean.timed(value);
+    }
+
+    @Benchmark
+    public long sampledTimed() {
+        return bean.sampledTimed(value);
+    }
+
+    @Benchmark
+    public long counted() {
+        return bean.counted(value);
+    }
+
+    @Benchmark
+    public long monotonicCounted() {
+        return bean.monotonicCounted(value);
+    }
+
+    @Benchmark
+    public long metered() {
+        return bean.metered(value);
+    }
+
+    @Benchmark
+    public long exceptionMetered() {
+        return bean.exceptionMetered(value);
+    }
+}
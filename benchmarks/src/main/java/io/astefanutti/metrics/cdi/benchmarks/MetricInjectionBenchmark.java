@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.benchmarks;
+
+import com.codahale.metrics.Timer;
+import org.jboss.weld.environment.se.Weld;
+import org.jboss.weld.environment.se.WeldContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.enterprise.inject.Instance;
+import java.util.concurrent.TimeUnit;
+
+// Measures the creation of a dependent bean with an injected metric, whose name is
+// either a plain attribute or an EL expression evaluated by the EL metric name strategy.
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricInjectionBenchmark {
+
+    private Weld weld;
+
+    private Instance<StaticNameInjectionBean> staticName;
+
+    private Instance<ElNameInjectionBean> elName;
+
+    @Setup
+    public void start() {
+        weld = WeldContainers.weld();
+        WeldContainer container = weld.initialize();
+        staticName = container.instance().select(StaticNameInjectionBean.class);
+        elName = container.instance().select(ElNameInjectionBean.class);
+    }
+
+    @TearDown
+    public void stop() {
+        weld.shutdown();
+    }
+
+    @Benchmark
+    public Timer staticName() {
+        StaticNameInjectionBean bean = staticName.get();
+        staticName.destroy(bean);
+        return bean.timer;
+    }
+
+    @Benchmark
+    public Timer elName() {
+        ElNameInjectionBean bean = elName.get();
+        elName.destroy(bean);
+        return bean.timer;
+    }
+}
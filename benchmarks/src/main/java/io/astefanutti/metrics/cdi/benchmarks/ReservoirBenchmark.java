@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.benchmarks;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Reservoir;
+import io.astefanutti.metrics.cdi.HdrHistogramReservoir;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Measures the cost of recording a value into the reservoirs that can be selected for timers and histograms
+// when the same reservoir is updated concurrently. Run with the GC profiler, i.e. -prof gc, to measure the allocation rate.
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Threads(4)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReservoirBenchmark {
+
+    private final Reservoir exponentiallyDecaying = new ExponentiallyDecayingReservoir();
+
+    private final Reservoir hdrHistogram = new HdrHistogramReservoir();
+
+    @Benchmark
+    public void exponentiallyDecaying() {
+        exponentiallyDecaying.update(ThreadLocalRandom.current().nextLong(1000000L));
+    }
+
+    @Benchmark
+    public void hdrHistogram() {
+        hdrHistogram.update(ThreadLocalRandom.current().nextLong(1000000L));
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.benchmarks;
+
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.weld.environment.se.Weld;
+
+/* package-private */ final class WeldContainers {
+
+    private WeldContainers() {
+    }
+
+    // Bootstraps a synthetic bean archive with the Metrics CDI extension and the benchmark beans,
+    // similar to the deployments of the Java SE environment tests
+    static Weld weld() {
+        return new Weld()
+            .disableDiscovery()
+            // Metrics CDI extension
+            .addExtension(new MetricsExtension())
+            .addPackage(false, MetricsExtension.class)
+            // Benchmark beans
+            .addBeanClass(InstrumentedBean.class)
+            .addBeanClass(GaugeBean.class)
+            .addBeanClass(MetricSuffix.class)
+            .addBeanClass(StaticNameInjectionBean.class)
+            .addBeanClass(ElNameInjectionBean.class);
+    }
+}
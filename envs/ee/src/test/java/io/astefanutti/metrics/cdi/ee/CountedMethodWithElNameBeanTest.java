@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.ee;
+
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.EnterpriseArchive;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.shrinkwrap.resolver.api.maven.Maven;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class CountedMethodWithElNameBeanTest {
+
+    @Deployment
+    public static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(EnterpriseArchive.class)
+            .addAsLibraries(
+                Maven.configureResolver()
+                    .workOffline()
+                    .loadPomFromFile("pom.xml")
+                    .resolve("io.astefanutti.metrics.cdi:metrics-cdi")
+                    .withTransitivity()
+                    .as(JavaArchive.class))
+            .addAsLibrary(
+                ShrinkWrap.create(JavaArchive.class)
+                    .addClass(CountedMethodWithElNameBean.class)
+                    .addClass(TenantBean.class)
+                    // FIXME: Test class must be added until ARQ-659 is fixed
+                    .addClass(CountedMethodWithElNameBeanTest.class)
+                    .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml"));
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration) {
+        configuration.maxDynamicMetrics(2);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private CountedMethodWithElNameBean bean;
+
+    @Inject
+    private TenantBean tenant;
+
+    @Test
+    public void dynamicMetricsBeyondLimitRejected() {
+        for (String id : new String[]{"a", "b", "c", "c"}) {
+            tenant.setTenant(id);
+            bean.countedMethod();
+        }
+
+        assertThat("Counter count is incorrect", registry.getCounters().get(counterName("a")).getCount(), is(equalTo(1L)));
+        assertThat("Counter count is incorrect", registry.getCounters().get(counterName("b")).getCount(), is(equalTo(1L)));
+        assertThat("Counter is registered beyond the limit", registry.getCounters(), not(hasKey(counterName("c"))));
+
+        assertThat("Rejected counter is not registered", registry.getCounters(), hasKey("io.astefanutti.metrics.cdi.rejected"));
+        assertThat("Rejected counter count is incorrect", registry.getCounters().get("io.astefanutti.metrics.cdi.rejected").getCount(), is(equalTo(2L)));
+    }
+
+    private static String counterName(String tenant) {
+        return MetricRegistry.name(CountedMethodWithElNameBean.class, "tenant " + tenant);
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.annotation.CachedGauge;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@ApplicationScoped
+public class BlockingCachedGaugeBean {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    @CachedGauge(name = "blockingGauge1", timeout = 10L, timeoutUnit = TimeUnit.MILLISECONDS)
+    public long getBlockingGauge1() throws InterruptedException {
+        return block();
+    }
+
+    @CachedGauge(name = "blockingGauge2", timeout = 10L, timeoutUnit = TimeUnit.MILLISECONDS)
+    public long getBlockingGauge2() throws InterruptedException {
+        return block();
+    }
+
+    @CachedGauge(name = "blockingGauge3", timeout = 10L, timeoutUnit = TimeUnit.MILLISECONDS)
+    public long getBlockingGauge3() throws InterruptedException {
+        return block();
+    }
+
+    @CachedGauge(name = "blockingGauge4", timeout = 10L, timeoutUnit = TimeUnit.MILLISECONDS)
+    public long getBlockingGauge4() throws InterruptedException {
+        return block();
+    }
+
+    @CachedGauge(name = "blockingGauge5", timeout = 10L, timeoutUnit = TimeUnit.MILLISECONDS)
+    public long getBlockingGauge5() throws InterruptedException {
+        return block();
+    }
+
+    public void release() {
+        latch.countDown();
+    }
+
+    private long block() throws InterruptedException {
+        latch.await(10L, TimeUnit.SECONDS);
+        return latch.getCount();
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import io.astefanutti.metrics.cdi.LazyMetricSet;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Produces;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ApplicationScoped
+public class MetricSetProducerBean {
+
+    private final AtomicInteger computations = new AtomicInteger();
+
+    private final Counter active = new Counter();
+
+    private final Meter timeouts = new Meter();
+
+    @Produces
+    @com.codahale.metrics.annotation.Metric(name = "pool", absolute = true)
+    private final MetricSet pool = new MetricSet() {
+        @Override
+        public Map<String, Metric> getMetrics() {
+            Map<String, Metric> metrics = new HashMap<>();
+            metrics.put("active", active);
+            metrics.put("waits", new MetricSet() {
+                @Override
+                public Map<String, Metric> getMetrics() {
+                    return Collections.<String, Metric>singletonMap("timeouts", timeouts);
+                }
+            });
+            return metrics;
+        }
+    };
+
+    @Produces
+    @com.codahale.metrics.annotation.Metric(name = "threads", absolute = true)
+    private LazyMetricSet threads() {
+        return new LazyMetricSet() {
+            @Override
+            public Set<String> getNames() {
+                return new HashSet<>(Arrays.asList("count", "computation"));
+            }
+
+            @Override
+            public Map<String, Metric> getMetrics() {
+                final int computation = computations.incrementAndGet();
+                Map<String, Metric> metrics = new HashMap<>();
+                metrics.put("count", new Gauge<Integer>() {
+                    @Override
+                    public Integer getValue() {
+                        return 2;
+                    }
+                });
+                metrics.put("computation", new Gauge<Integer>() {
+                    @Override
+                    public Integer getValue() {
+                        return computation;
+                    }
+                });
+                return metrics;
+            }
+        };
+    }
+
+    public int getComputations() {
+        return computations.get();
+    }
+
+    public Counter getActive() {
+        return active;
+    }
+
+    public Meter getTimeouts() {
+        return timeouts;
+    }
+}
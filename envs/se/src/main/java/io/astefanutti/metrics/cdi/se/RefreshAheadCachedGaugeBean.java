@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.annotation.CachedGauge;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.TimeUnit;
+
+@ApplicationScoped
+public class RefreshAheadCachedGaugeBean {
+
+    private volatile long gauge;
+
+    private volatile boolean failing;
+
+    @CachedGauge(name = "refreshAheadCachedGauge", timeout = 100L, timeoutUnit = TimeUnit.MILLISECONDS)
+    public long getGauge() {
+        if (failing)
+            throw new IllegalStateException("Gauge failure");
+        return gauge;
+    }
+
+    public void setGauge(long gauge) {
+        this.gauge = gauge;
+    }
+
+    public void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+}
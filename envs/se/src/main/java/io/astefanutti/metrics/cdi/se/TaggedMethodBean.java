@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.annotation.Counted;
+import com.codahale.metrics.annotation.Metric;
+import com.codahale.metrics.annotation.Timed;
+import io.astefanutti.metrics.cdi.MetricTag;
+import io.astefanutti.metrics.cdi.MetricTags;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+@ApplicationScoped
+@MetricTag(key = "region", value = "eu")
+public class TaggedMethodBean {
+
+    @Inject
+    @Metric(name = "hits", absolute = true)
+    @MetricTags({@MetricTag(key = "region", value = "us"), @MetricTag(key = "zone", value = "a")})
+    private Meter hits;
+
+    @Counted(name = "calls", absolute = true, monotonic = true)
+    public void call(@MetricTag(key = "tenant") String tenant) {
+    }
+
+    @Counted(name = "active", absolute = true)
+    public void process(@MetricTag(key = "tenant") String tenant) {
+    }
+
+    @Timed(name = "requests", absolute = true)
+    @MetricTag(key = "region", value = "us")
+    public void request(@MetricTag(key = "tenant") String tenant, @MetricTag(key = "endpoint") int endpoint) {
+    }
+
+    public void hit() {
+        hits.mark();
+    }
+}
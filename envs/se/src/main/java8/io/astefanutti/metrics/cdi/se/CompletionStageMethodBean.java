@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.annotation.Counted;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Timed;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+
+public class CompletionStageMethodBean {
+
+    @Timed(name = "completionStageTimedMethod")
+    public <T> CompletionStage<T> completionStageTimedMethod(CompletableFuture<T> future) {
+        return future;
+    }
+
+    @Counted(name = "completionStageCountedMethod")
+    public <T> CompletableFuture<T> completionStageCountedMethod(CompletableFuture<T> future) {
+        return future;
+    }
+
+    @ExceptionMetered(name = "completionStageExceptionMeteredMethod", cause = IllegalStateException.class)
+    public <T> Future<T> completionStageExceptionMeteredMethod(CompletableFuture<T> future) {
+        return future;
+    }
+}
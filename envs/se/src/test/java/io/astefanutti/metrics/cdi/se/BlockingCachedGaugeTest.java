@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class BlockingCachedGaugeTest {
+
+    private final static String GAUGE_NAME = MetricRegistry.name(BlockingCachedGaugeBean.class, "blockingGauge5");
+
+    private static RecordingReporter reporter;
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(BlockingCachedGaugeBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration, MetricRegistry registry) {
+        configuration.refreshAheadCachedGauges(true);
+        reporter = new RecordingReporter(registry);
+        configuration.reporter(reporter, 10L, TimeUnit.MILLISECONDS);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private BlockingCachedGaugeBean bean;
+
+    @Test
+    public void blockingGaugesDoNotDelayReporters() throws InterruptedException {
+        try {
+            // Let's trigger the instantiation of the application scoped bean explicitly
+            // so that its gauges, more than the scheduler threads, start blocking their refreshes
+            bean.toString();
+            assertThat("Gauge is not registered correctly", registry.getGauges(), hasKey(GAUGE_NAME));
+
+            assertThat("Reports are delayed by the gauge refreshes", reporter.reports.await(5L, TimeUnit.SECONDS), is(true));
+        } finally {
+            bean.release();
+        }
+    }
+
+    private static final class RecordingReporter extends ScheduledReporter {
+
+        private final CountDownLatch reports = new CountDownLatch(5);
+
+        private RecordingReporter(MetricRegistry registry) {
+            super(registry, "recording", MetricFilter.ALL, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+            // Only counts the reports following the gauges registration
+            if (gauges.containsKey(GAUGE_NAME))
+                reports.countDown();
+        }
+    }
+}
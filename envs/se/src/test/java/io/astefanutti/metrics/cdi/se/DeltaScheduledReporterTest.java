@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.DeltaScheduledReporter;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class DeltaScheduledReporterTest {
+
+    private final static String TIMER_NAME = MetricRegistry.name(TimedMethodBean.class, "timedMethod");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(TimedMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private TimedMethodBean bean;
+
+    @Test
+    public void reportChangedMetrics() {
+        // Registers the timer
+        bean.timedMethod();
+        final int[] value = {1};
+        registry.register("gauge", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return value[0];
+            }
+        });
+
+        RecordingReporter reporter = new RecordingReporter(registry, 3);
+        try {
+            reporter.report();
+            assertThat("Full report is incorrect", reporter.reported, containsInAnyOrder(TIMER_NAME, "gauge"));
+
+            reporter.report();
+            assertThat("Idle metrics are reported", reporter.reported, is(empty()));
+
+            bean.timedMethod();
+            reporter.report();
+            assertThat("Changed metrics are incorrect", reporter.reported, contains(TIMER_NAME));
+
+            value[0] = 2;
+            registry.counter("counter").inc();
+            reporter.report();
+            assertThat("Full report is incorrect", reporter.reported, containsInAnyOrder(TIMER_NAME, "gauge", "counter"));
+
+            registry.remove("counter");
+            reporter.report();
+            assertThat("Idle metrics are reported", reporter.reported, is(empty()));
+        } finally {
+            reporter.stop();
+        }
+    }
+
+    private static final class RecordingReporter extends DeltaScheduledReporter {
+
+        private final Set<String> reported = new HashSet<>();
+
+        private RecordingReporter(MetricRegistry registry, int fullReportCycles) {
+            super(registry, "recording", MetricFilter.ALL, TimeUnit.SECONDS, TimeUnit.MILLISECONDS, fullReportCycles);
+        }
+
+        @Override
+        public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+            reported.clear();
+            reported.addAll(gauges.keySet());
+            reported.addAll(counters.keySet());
+            reported.addAll(histograms.keySet());
+            reported.addAll(meters.keySet());
+            reported.addAll(timers.keySet());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class DynamicMetricsIdleTimeoutTest {
+
+    private final static String COUNTER_NAME = "calls{region=eu,tenant=acme}";
+
+    private final static String ACTIVE_COUNTER_NAME = "active{region=eu,tenant=acme}";
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(TaggedMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration) {
+        configuration.dynamicMetricsIdleTimeout(100L, TimeUnit.MILLISECONDS);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private TaggedMethodBean bean;
+
+    @Test
+    public void idleMetricEvictedAndRegisteredAgain() throws InterruptedException {
+        bean.call("acme");
+        assertThat("Counter is not registered correctly", registry.getCounters(), hasKey(COUNTER_NAME));
+
+        // Wait for the counter to be evicted
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (registry.getCounters().containsKey(COUNTER_NAME) && System.nanoTime() < deadline)
+            Thread.sleep(10L);
+        assertThat("Idle counter is not evicted", registry.getCounters(), not(hasKey(COUNTER_NAME)));
+
+        bean.call("acme");
+        assertThat("Counter is not registered again", registry.getCounters(), hasKey(COUNTER_NAME));
+        assertThat("Counter count is incorrect", registry.getCounters().get(COUNTER_NAME).getCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void activeNonMonotonicCounterNotEvicted() throws InterruptedException {
+        bean.process("acme");
+        Counter counter = registry.getCounters().get(ACTIVE_COUNTER_NAME);
+        assertThat("Counter is not registered correctly", counter, is(notNullValue()));
+
+        // The count of the non-monotonic counter goes back to 0 after each call
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500L);
+        while (System.nanoTime() < deadline) {
+            bean.process("acme");
+            assertThat("Active counter is evicted", registry.getCounters().get(ACTIVE_COUNTER_NAME), is(sameInstance(counter)));
+            Thread.sleep(10L);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import io.astefanutti.metrics.cdi.se.util.MetricsUtil;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class EagerRegistrationTest {
+
+    private final static String TIMER_NAME = MetricRegistry.name(ApplicationScopedTimedMethodBean.class, "applicationScopedTimedMethod");
+
+    private final static String[] METHOD_NAMES = {"timedMethodOne", "timedMethodTwo", "timedMethodProtected", "timedMethodPackagedPrivate"};
+
+    private static Set<String> timerNames() {
+        Set<String> names = new HashSet<>(MetricsUtil.absoluteMetricNames(TimedClassBean.class, "timedClass", METHOD_NAMES, "TimedClassBean"));
+        names.add(TIMER_NAME);
+        return names;
+    }
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test beans
+            .addClasses(ApplicationScopedTimedMethodBean.class, TimedClassBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration) {
+        configuration.eagerRegistration(true);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private ApplicationScopedTimedMethodBean bean;
+
+    @Test
+    @InSequence(1)
+    public void timersRegisteredBeforeBeansConstruction() {
+        assertThat("Timers are not registered correctly", registry.getTimers().keySet(), is(equalTo(timerNames())));
+
+        // Make sure that the timers haven't been called yet
+        for (Timer timer : registry.getTimers().values())
+            assertThat("Timer count is incorrect", timer.getCount(), is(equalTo(0L)));
+    }
+
+    @Test
+    @InSequence(2)
+    public void callTimedMethodOnce() {
+        assertThat("Timer is not registered correctly", registry.getTimers(), hasKey(TIMER_NAME));
+        Timer timer = registry.getTimers().get(TIMER_NAME);
+
+        // Call the timed method and assert it's been timed
+        bean.applicationScopedTimedMethod();
+
+        assertThat("Timer count is incorrect", timer.getCount(), is(equalTo(1L)));
+    }
+}
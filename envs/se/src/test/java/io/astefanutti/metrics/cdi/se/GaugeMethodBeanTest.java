@@ -19,6 +19,7 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import org.jboss.shrinkwrap.api.asset.EmptyAsset;
 import org.junit.Before;
+import io.astefanutti.metrics.cdi.LongGauge;
 import io.astefanutti.metrics.cdi.MetricsExtension;
 import org.jboss.arquillian.container.test.api.Deployment;
 import org.jboss.arquillian.junit.Arquillian;
@@ -86,4 +87,17 @@ public class GaugeMethodBeanTest {
         bean.setGauge(value);
         assertThat("Gauge value is incorrect", gauge.getValue(), is(equalTo(value)));
     }
-}
\ No newline at end of file
+
+    @Test
+    @InSequence(3)
+    public void callPrimitiveGaugeAfterSetterCall() {
+        assertThat("Gauge is not registered correctly", registry.getGauges(), hasKey(GAUGE_NAME));
+        Gauge<?> gauge = registry.getGauges().get(GAUGE_NAME);
+        assertThat("Gauge is not a primitive gauge", gauge, is(instanceOf(LongGauge.class)));
+
+        // Call the setter method and assert the primitive gauge is up-to-date
+        long value = Math.round(Math.random() * Long.MAX_VALUE);
+        bean.setGauge(value);
+        assertThat("Gauge value is incorrect", ((LongGauge) gauge).getLongValue(), is(equalTo(value)));
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.BucketSnapshot;
+import io.astefanutti.metrics.cdi.HdrHistogramReservoir;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class HdrHistogramReservoirBeanTest {
+
+    private final static String HISTOGRAM_NAME = MetricRegistry.name(HdrHistogramReservoirBean.class, "hdrHistogram");
+
+    private final static String TIMER_NAME = MetricRegistry.name(HdrHistogramReservoirBean.class, "hdrHistogramTimedMethod");
+
+    // Greater than the size of the exponentially decaying reservoir
+    private final static int UPDATES = 10000;
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(HdrHistogramReservoirBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private HdrHistogramReservoirBean bean;
+
+    @Test
+    @InSequence(1)
+    public void updateHistogram() {
+        assertThat("Histogram is not registered correctly", registry.getHistograms(), hasKey(HISTOGRAM_NAME));
+        Histogram histogram = registry.getHistograms().get(HISTOGRAM_NAME);
+
+        for (int i = 1; i <= UPDATES; i++)
+            bean.update(i);
+
+        // All the values are retained in the snapshot
+        Snapshot snapshot = histogram.getSnapshot();
+        assertThat("Histogram count is incorrect", histogram.getCount(), is(equalTo((long) UPDATES)));
+        assertThat("Histogram snapshot count is incorrect", ((BucketSnapshot) snapshot).getTotalCount(), is(equalTo((long) UPDATES)));
+        assertThat("Histogram snapshot size is incorrect", snapshot.size(), is(equalTo(snapshot.getValues().length)));
+        assertThat("Histogram median is incorrect", snapshot.getMedian(), is(closeTo(UPDATES / 2, UPDATES / 100)));
+        assertThat("Histogram 99th percentile is incorrect", snapshot.get99thPercentile(), is(closeTo(UPDATES * 0.99, UPDATES / 100)));
+        assertThat("Histogram max is incorrect", (double) snapshot.getMax(), is(closeTo(UPDATES, UPDATES / 100)));
+    }
+
+    @Test
+    @InSequence(2)
+    public void callTimedMethod() {
+        assertThat("Timer is not registered correctly", registry.getTimers(), hasKey(TIMER_NAME));
+        Timer timer = registry.getTimers().get(TIMER_NAME);
+
+        for (int i = 0; i < UPDATES; i++)
+            bean.hdrHistogramTimedMethod();
+
+        assertThat("Timer count is incorrect", timer.getCount(), is(equalTo((long) UPDATES)));
+        assertThat("Timer snapshot count is incorrect", ((BucketSnapshot) timer.getSnapshot()).getTotalCount(), is(equalTo((long) UPDATES)));
+    }
+
+    @Test
+    @InSequence(3)
+    public void slideWindow() {
+        ManualClock clock = new ManualClock();
+        HdrHistogramReservoir reservoir = new HdrHistogramReservoir(1, TimeUnit.MINUTES, clock);
+
+        for (int i = 1; i <= UPDATES; i++)
+            reservoir.update(i);
+
+        // The snapshot values are bounded by the number of buckets
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertThat("Snapshot count is incorrect", ((BucketSnapshot) snapshot).getTotalCount(), is(equalTo((long) UPDATES)));
+        assertThat("Snapshot size is incorrect", snapshot.size(), is(equalTo(snapshot.getValues().length)));
+        assertThat("Snapshot values are not bounded", snapshot.getValues().length, is(lessThan(UPDATES / 10)));
+        long count = 0;
+        for (long bucket : ((BucketSnapshot) snapshot).getCounts())
+            count += bucket;
+        assertThat("Snapshot counts are incorrect", count, is(equalTo((long) UPDATES)));
+
+        // Values recorded before the window are discarded
+        clock.tick += TimeUnit.SECONDS.toNanos(30);
+        reservoir.update(UPDATES);
+        assertThat("Reservoir size is incorrect", reservoir.size(), is(equalTo(UPDATES + 1)));
+        clock.tick += TimeUnit.SECONDS.toNanos(40);
+        assertThat("Reservoir size is incorrect", reservoir.size(), is(equalTo(1)));
+        clock.tick += TimeUnit.SECONDS.toNanos(60);
+        assertThat("Reservoir size is incorrect", reservoir.getSnapshot().size(), is(equalTo(0)));
+    }
+
+    private static final class ManualClock extends Clock {
+
+        private long tick;
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+    }
+}
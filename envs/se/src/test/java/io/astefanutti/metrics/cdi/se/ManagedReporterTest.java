@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class ManagedReporterTest {
+
+    private static RecordingReporter reporter;
+
+    private static FailingReporter failing;
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(TimedMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration, MetricRegistry registry) {
+        reporter = new RecordingReporter(registry);
+        failing = new FailingReporter(registry);
+        configuration.reporter(reporter, 10L, TimeUnit.MILLISECONDS);
+        configuration.reporter(failing, 10L, TimeUnit.MILLISECONDS);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private TimedMethodBean bean;
+
+    @Test
+    public void reportsScheduled() throws InterruptedException {
+        bean.timedMethod();
+
+        assertThat("Reports are not scheduled", reporter.reports.await(5L, TimeUnit.SECONDS), is(true));
+        assertThat("Reports do not run on the shared scheduler", reporter.thread, startsWith("metrics-cdi-scheduler-"));
+        assertThat("Timer is not reported", reporter.timers, hasKey(MetricRegistry.name(TimedMethodBean.class, "timedMethod")));
+    }
+
+    @Test
+    public void reportsScheduledAfterError() throws InterruptedException {
+        assertThat("Reports are not scheduled after an error", failing.reports.await(5L, TimeUnit.SECONDS), is(true));
+        assertThat("Report failures are not counted", registry.getMeters(), hasKey("io.astefanutti.metrics.cdi.reporters.failures"));
+        assertThat("Report failures count is incorrect", registry.getMeters().get("io.astefanutti.metrics.cdi.reporters.failures").getCount(), is(greaterThan(0L)));
+    }
+
+    private static final class RecordingReporter extends ScheduledReporter {
+
+        private final CountDownLatch reports = new CountDownLatch(3);
+
+        private volatile String thread;
+
+        private volatile SortedMap<String, Timer> timers;
+
+        private RecordingReporter(MetricRegistry registry) {
+            super(registry, "recording", MetricFilter.ALL, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+            // Only counts the reports following the timer registration
+            if (timers.isEmpty())
+                return;
+            this.thread = Thread.currentThread().getName();
+            this.timers = timers;
+            reports.countDown();
+        }
+    }
+
+    private static final class FailingReporter extends ScheduledReporter {
+
+        private final CountDownLatch reports = new CountDownLatch(3);
+
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        private FailingReporter(MetricRegistry registry) {
+            super(registry, "failing", MetricFilter.ALL, TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+            // Only the first report fails, with an error rather than an exception
+            if (failed.compareAndSet(false, true))
+                throw new AssertionError("Report failure");
+            reports.countDown();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import io.astefanutti.metrics.cdi.exporters.MappedFileReporter;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(Arquillian.class)
+public class MappedFileReporterTest {
+
+    private final static String TIMER_NAME = MetricRegistry.name(TimedMethodBean.class, "timedMethod");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(TimedMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private TimedMethodBean bean;
+
+    @Test
+    public void publishMetrics() throws IOException {
+        bean.timedMethod();
+        bean.timedMethod();
+        registry.counter("counter").inc(3);
+
+        File file = File.createTempFile("metrics", ".bin");
+        file.deleteOnExit();
+        MappedFileReporter reporter = new MappedFileReporter(registry, file, 8);
+        try {
+            reporter.report();
+            reporter.report();
+
+            // Reads the file the way an out-of-process reader would
+            try (RandomAccessFile mapped = new RandomAccessFile(file, "r")) {
+                ByteBuffer buffer = mapped.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, mapped.length()).order(ByteOrder.LITTLE_ENDIAN);
+                assertThat("Magic number is incorrect", buffer.getInt(0), is(equalTo(MappedFileReporter.MAGIC)));
+                assertThat("Sequence number is incorrect", buffer.getLong(8), is(equalTo(4L)));
+                assertThat("Publication time is incorrect", buffer.getLong(16), is(greaterThan(0L)));
+                assertThat("Entry count is incorrect", buffer.getInt(24), is(equalTo(2)));
+
+                // Counters are published first
+                assertThat("Counter type is incorrect", buffer.getInt(entry(0)), is(equalTo(MappedFileReporter.COUNTER)));
+                assertThat("Counter name is incorrect", name(buffer, 0), is(equalTo("counter")));
+                assertThat("Counter count is incorrect", buffer.getLong(entry(0) + MappedFileReporter.VALUES), is(equalTo(3L)));
+
+                assertThat("Timer type is incorrect", buffer.getInt(entry(1)), is(equalTo(MappedFileReporter.TIMER)));
+                assertThat("Timer name is incorrect", name(buffer, 1), is(equalTo(TIMER_NAME)));
+                assertThat("Timer count is incorrect", buffer.getLong(entry(1) + MappedFileReporter.VALUES), is(equalTo(2L)));
+
+                // The sequence number is checked again once the entries are read
+                assertThat("Sequence number has changed", buffer.getLong(8), is(equalTo(4L)));
+            }
+        } finally {
+            reporter.stop();
+        }
+    }
+
+    @Test
+    public void publishEvenSequenceOnFailure() throws IOException {
+        registry.register("failing", new Histogram(new UniformReservoir()) {
+            @Override
+            public Snapshot getSnapshot() {
+                throw new IllegalStateException("Snapshot failure");
+            }
+        });
+
+        File file = File.createTempFile("metrics", ".bin");
+        file.deleteOnExit();
+        MappedFileReporter reporter = new MappedFileReporter(registry, file, 8);
+        try (RandomAccessFile mapped = new RandomAccessFile(file, "r")) {
+            ByteBuffer buffer = mapped.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, mapped.length()).order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                reporter.report();
+                fail("Failing snapshot is reported");
+            } catch (IllegalStateException cause) {
+                assertThat("Sequence number is incorrect", buffer.getLong(8), is(equalTo(2L)));
+            }
+
+            registry.remove("failing");
+            reporter.report();
+            assertThat("Sequence number is incorrect", buffer.getLong(8), is(equalTo(4L)));
+        } finally {
+            registry.remove("failing");
+            reporter.stop();
+        }
+    }
+
+    private static int entry(int index) {
+        return MappedFileReporter.HEADER_SIZE + index * MappedFileReporter.ENTRY_SIZE;
+    }
+
+    private static String name(ByteBuffer buffer, int index) {
+        byte[] name = new byte[buffer.getInt(entry(index) + 4)];
+        for (int i = 0; i < name.length; i++)
+            name[i] = buffer.get(entry(index) + 8 + i);
+        return new String(name, Charset.forName("UTF-8"));
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class MetricSetProducerBeanTest {
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(MetricSetProducerBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration) {
+        // Long enough for the reads sharing the computation to complete on slow machines
+        configuration.lazyMetricSetTimeout(2L, TimeUnit.SECONDS);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private MetricSetProducerBean bean;
+
+    @Test
+    public void flattenedMetricSetRegistered() {
+        assertThat("Metric set is registered", registry.getMetrics(), not(hasKey("pool")));
+        assertThat("Counter is not registered correctly", registry.getCounters().get("pool.active"), is(sameInstance(bean.getActive())));
+        assertThat("Meter is not registered correctly", registry.getMeters().get("pool.waits.timeouts"), is(sameInstance(bean.getTimeouts())));
+    }
+
+    @Test
+    public void lazyMetricSetComputedOnRead() throws InterruptedException {
+        assertThat("Gauge is not registered correctly", registry.getGauges(), allOf(hasKey("threads.count"), hasKey("threads.computation"), not(hasKey("threads"))));
+        assertThat("Lazy metric set is computed on registration", bean.getComputations(), is(equalTo(0)));
+
+        // The gauges of the set share the same computation until the timeout expires
+        assertThat("Gauge value is incorrect", registry.getGauges().get("threads.computation").getValue(), is(equalTo((Object) 1)));
+        assertThat("Gauge value is incorrect", registry.getGauges().get("threads.count").getValue(), is(equalTo((Object) 2)));
+        assertThat("Gauge value is incorrect", registry.getGauges().get("threads.computation").getValue(), is(equalTo((Object) 1)));
+        assertThat("Lazy metric set is computed for each read", bean.getComputations(), is(equalTo(1)));
+
+        // Wait for the timeout to expire
+        Gauge<?> gauge = registry.getGauges().get("threads.computation");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (Integer.valueOf(1).equals(gauge.getValue()) && System.nanoTime() < deadline)
+            Thread.sleep(50L);
+        assertThat("Gauge value is incorrect", gauge.getValue(), is(equalTo((Object) 2)));
+    }
+}
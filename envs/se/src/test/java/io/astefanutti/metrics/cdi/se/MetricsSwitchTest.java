@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import io.astefanutti.metrics.cdi.MetricsSwitch;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class MetricsSwitchTest {
+
+    private final static String TIMER_NAME = MetricRegistry.name(TimedMethodBean.class, "timedMethod");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(TimedMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration) {
+        configuration.jmxSwitch(true);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private MetricsSwitch metricsSwitch;
+
+    @Inject
+    private TimedMethodBean bean;
+
+    @Test
+    @InSequence(1)
+    public void disableTimer() {
+        assertThat("Timer is not registered correctly", registry.getTimers(), hasKey(TIMER_NAME));
+        Timer timer = registry.getTimers().get(TIMER_NAME);
+
+        bean.timedMethod();
+        assertThat("Timer count is incorrect", timer.getCount(), is(equalTo(1L)));
+
+        metricsSwitch.disable(TIMER_NAME);
+        assertThat("Timer is not disabled", metricsSwitch.isEnabled(TIMER_NAME), is(equalTo(false)));
+
+        bean.timedMethod();
+        assertThat("Timer count is incorrect", timer.getCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    @InSequence(2)
+    public void enableTimerWithJmx() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MetricsSwitch.OBJECT_NAME);
+        assertThat("Disabled names are incorrect", (String[]) server.getAttribute(name, "DisabledNames"), is(arrayContaining(TIMER_NAME)));
+
+        server.invoke(name, "enable", new Object[]{TIMER_NAME}, new String[]{String.class.getName()});
+
+        bean.timedMethod();
+        assertThat("Timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(2L)));
+    }
+
+    @Test
+    @InSequence(3)
+    public void disablePrefix() {
+        metricsSwitch.disablePrefix(TimedMethodBean.class.getName());
+
+        bean.timedMethod();
+        assertThat("Timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(2L)));
+
+        metricsSwitch.enablePrefix(TimedMethodBean.class.getName());
+
+        bean.timedMethod();
+        assertThat("Timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(3L)));
+    }
+}
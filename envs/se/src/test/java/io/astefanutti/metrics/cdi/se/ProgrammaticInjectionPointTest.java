@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.inject.Default;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.spi.Annotated;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.InjectionPoint;
+import javax.enterprise.util.AnnotationLiteral;
+import javax.inject.Inject;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Member;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class ProgrammaticInjectionPointTest {
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private BeanManager manager;
+
+    @Inject
+    private Instance<Timer> timers;
+
+    // Not injected, only used as the member of the synthetic injection point
+    private Timer syntheticTimer;
+
+    @Test
+    public void lookupTimerInstance() {
+        Timer timer = timers.get();
+
+        String name = MetricRegistry.name(ProgrammaticInjectionPointTest.class, "timers");
+        assertThat("Timer is not registered correctly", registry.getTimers(), hasKey(name));
+        assertThat("Timer instance is incorrect", timer, is(sameInstance(registry.getTimers().get(name))));
+    }
+
+    @Test
+    public void injectTimerWithoutAnnotated() throws NoSuchFieldException {
+        InjectionPoint ip = new SyntheticInjectionPoint(ProgrammaticInjectionPointTest.class.getDeclaredField("syntheticTimer"));
+        Timer timer = (Timer) manager.getInjectableReference(ip, manager.createCreationalContext(null));
+
+        String name = MetricRegistry.name(ProgrammaticInjectionPointTest.class, "syntheticTimer");
+        assertThat("Timer is not registered correctly", registry.getTimers(), hasKey(name));
+        assertThat("Timer instance is incorrect", timer, is(sameInstance(registry.getTimers().get(name))));
+    }
+
+    private static final class SyntheticInjectionPoint implements InjectionPoint {
+
+        private final Member member;
+
+        private SyntheticInjectionPoint(Member member) {
+            this.member = member;
+        }
+
+        @Override
+        public Type getType() {
+            return Timer.class;
+        }
+
+        @Override
+        public Set<Annotation> getQualifiers() {
+            return Collections.<Annotation>singleton(new AnnotationLiteral<Default>() {
+            });
+        }
+
+        @Override
+        public Bean<?> getBean() {
+            return null;
+        }
+
+        @Override
+        public Member getMember() {
+            return member;
+        }
+
+        @Override
+        public Annotated getAnnotated() {
+            return null;
+        }
+
+        @Override
+        public boolean isDelegate() {
+            return false;
+        }
+
+        @Override
+        public boolean isTransient() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import io.astefanutti.metrics.cdi.exporters.PrometheusExporter;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class PrometheusExporterTest {
+
+    private final static String TIMER_NAME = "io_astefanutti_metrics_cdi_se_TimedMethodBean_timedMethod";
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test beans
+            .addClasses(TaggedMethodBean.class, TimedMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private TaggedMethodBean taggedBean;
+
+    @Inject
+    private TimedMethodBean timedBean;
+
+    @Test
+    public void exportMetrics() throws IOException {
+        taggedBean.call("acme");
+        taggedBean.call("acme");
+        taggedBean.hit();
+        timedBean.timedMethod();
+
+        try (PrometheusExporter exporter = new PrometheusExporter(registry)) {
+            String exposition = scrape(exporter);
+            assertThat("Counter is not exported correctly", exposition, allOf(containsString("# TYPE calls gauge\n"), containsString("calls{region=\"eu\",tenant=\"acme\"} 2\n")));
+            assertThat("Meter is not exported correctly", exposition, allOf(containsString("# TYPE hits_total counter\n"), containsString("hits_total{region=\"us\",zone=\"a\"} 1\n")));
+            assertThat("Timer is not exported correctly", exposition, allOf(containsString("# TYPE " + TIMER_NAME + " summary\n"), containsString(TIMER_NAME + "{quantile=\"0.99\"} "), not(containsString(TIMER_NAME + "_sum ")), containsString(TIMER_NAME + "_count 1\n")));
+
+            // Metrics registered and removed after the exporter creation are tracked
+            registry.counter("late").inc(3);
+            registry.remove(MetricRegistry.name(TimedMethodBean.class, "timedMethod"));
+
+            exposition = scrape(exporter);
+            assertThat("Counter is not exported correctly", exposition, containsString("late 3\n"));
+            assertThat("Timer is still exported", exposition, not(containsString(TIMER_NAME)));
+        }
+    }
+
+    @Test
+    public void skipCollidingSeries() throws IOException {
+        try (PrometheusExporter exporter = new PrometheusExporter(registry)) {
+            registry.counter("colliding.counter").inc(1);
+            registry.counter("colliding_counter").inc(2);
+            registry.histogram("colliding").update(1);
+            registry.counter("colliding{tag=a}").inc(3);
+            registry.counter("colliding_count").inc(4);
+
+            String exposition = scrape(exporter);
+            assertThat("Colliding series is exported", exposition, allOf(containsString("colliding_counter 1\n"), not(containsString("colliding_counter 2\n"))));
+            assertThat("Colliding family is exported", exposition, allOf(containsString("# TYPE colliding summary\n"), not(containsString("colliding{tag=\"a\"} 3\n"))));
+            assertThat("Colliding derived sample is exported", exposition, allOf(containsString("colliding_count 1\n"), not(containsString("colliding_count 4\n"))));
+
+            // The colliding series are exported once the metric they collide with is removed
+            registry.remove("colliding.counter");
+            registry.remove("colliding");
+
+            exposition = scrape(exporter);
+            assertThat("Colliding series is not exported", exposition, allOf(containsString("colliding_counter 2\n"), containsString("colliding{tag=\"a\"} 3\n"), containsString("colliding_count 4\n")));
+        }
+    }
+
+    private static String scrape(PrometheusExporter exporter) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        exporter.write(output);
+        return output.toString("UTF-8");
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class RefreshAheadCachedGaugeTest {
+
+    private final static String GAUGE_NAME = MetricRegistry.name(RefreshAheadCachedGaugeBean.class, "refreshAheadCachedGauge");
+
+    private final static String REFRESH_TIMER_NAME = MetricRegistry.name(GAUGE_NAME, "refresh");
+
+    private final static String FAILURES_METER_NAME = MetricRegistry.name(GAUGE_NAME, "refresh", "failures");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(RefreshAheadCachedGaugeBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration) {
+        configuration.refreshAheadCachedGauges(true);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private RefreshAheadCachedGaugeBean bean;
+
+    @Before
+    public void instantiateApplicationScopedBean() {
+        // Let's trigger the instantiation of the application scoped bean explicitly
+        // as only a proxy gets injected otherwise
+        bean.setFailing(false);
+    }
+
+    @Test
+    @InSequence(1)
+    public void gaugeRefreshedInBackground() throws InterruptedException {
+        assertThat("Gauge is not registered correctly", registry.getGauges(), hasKey(GAUGE_NAME));
+        Gauge<?> gauge = registry.getGauges().get(GAUGE_NAME);
+
+        // Wait for the first refresh
+        awaitValue(gauge, 0L);
+
+        // Call the setter method and wait for the next refresh
+        bean.setGauge(1L);
+        awaitValue(gauge, 1L);
+
+        assertThat("Refresh timer is not registered correctly", registry.getTimers(), hasKey(REFRESH_TIMER_NAME));
+        Timer timer = registry.getTimers().get(REFRESH_TIMER_NAME);
+        assertThat("Refresh timer count is incorrect", timer.getCount(), is(greaterThan(1L)));
+    }
+
+    @Test
+    @InSequence(2)
+    public void gaugeKeepsLastValueOnFailure() throws InterruptedException {
+        assertThat("Refresh failures meter is not registered correctly", registry.getMeters(), hasKey(FAILURES_METER_NAME));
+        Meter meter = registry.getMeters().get(FAILURES_METER_NAME);
+        assertThat("Refresh failures meter count is incorrect", meter.getCount(), is(equalTo(0L)));
+
+        bean.setFailing(true);
+
+        // Wait for a failed refresh
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (meter.getCount() == 0L && System.nanoTime() < deadline)
+            Thread.sleep(10L);
+
+        assertThat("Refresh failures meter count is incorrect", meter.getCount(), is(greaterThan(0L)));
+        assertThat("Gauge value is incorrect", registry.getGauges().get(GAUGE_NAME).getValue(), is(equalTo((Object) 1L)));
+    }
+
+    private static void awaitValue(Gauge<?> gauge, Object value) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (!value.equals(gauge.getValue()) && System.nanoTime() < deadline)
+            Thread.sleep(10L);
+
+        assertThat("Gauge value is incorrect", gauge.getValue(), is(equalTo(value)));
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class SampledTimedMethodBeanTest {
+
+    private final static String EVERY_TIMER_NAME = MetricRegistry.name(SampledTimedMethodBean.class, "everyTimedMethod");
+
+    private final static String PROBABILITY_TIMER_NAME = MetricRegistry.name(SampledTimedMethodBean.class, "probabilityTimedMethod");
+
+    private final static int INVOCATIONS = 100;
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(SampledTimedMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private SampledTimedMethodBean bean;
+
+    @Test
+    public void callEveryTimedMethod() {
+        assertThat("Timer is not registered correctly", registry.getTimers(), hasKey(EVERY_TIMER_NAME));
+        Timer timer = registry.getTimers().get(EVERY_TIMER_NAME);
+
+        for (int i = 0; i < INVOCATIONS; i++)
+            bean.everyTimedMethod();
+
+        assertThat("Timer count is incorrect", timer.getCount(), is(equalTo((long) INVOCATIONS)));
+        assertThat("Timer sample size is incorrect", timer.getSnapshot().size(), is(equalTo(INVOCATIONS / 10)));
+        assertThat("Timer mean rate is incorrect", timer.getMeanRate(), is(greaterThan(0D)));
+    }
+
+    @Test
+    public void callProbabilityTimedMethod() {
+        assertThat("Timer is not registered correctly", registry.getTimers(), hasKey(PROBABILITY_TIMER_NAME));
+        Timer timer = registry.getTimers().get(PROBABILITY_TIMER_NAME);
+
+        for (int i = 0; i < INVOCATIONS; i++)
+            bean.probabilityTimedMethod();
+
+        assertThat("Timer count is incorrect", timer.getCount(), is(equalTo((long) INVOCATIONS)));
+        assertThat("Timer sample size is incorrect", timer.getSnapshot().size(), is(both(greaterThan(0)).and(lessThan(INVOCATIONS))));
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class SelfInstrumentationTest {
+
+    private final static String PREFIX = "io.astefanutti.metrics.cdi.";
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(TimedMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration) {
+        configuration.selfInstrumentation(true);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private TimedMethodBean bean;
+
+    @Test
+    public void selfMetricsRegistered() {
+        assertThat("Boot phases are not registered correctly", registry.getTimers(), allOf(hasKey(PREFIX + "boot.index"), hasKey(PREFIX + "boot.producers")));
+        assertThat("Boot phase count is incorrect", registry.getTimers().get(PREFIX + "boot.index").getCount(), is(equalTo(1L)));
+        assertThat("Bean type discovery count is incorrect", registry.getTimers().get(PREFIX + "metadata.discoveries").getCount(), is(equalTo(1L)));
+        assertThat("Name resolution count is incorrect", registry.getTimers().get(PREFIX + "names.resolutions").getCount(), is(greaterThan(0L)));
+
+        bean.timedMethod();
+        bean.timedMethod();
+
+        assertThat("Interceptor overhead count is incorrect", registry.getHistograms().get(PREFIX + "interceptors.timed.overhead").getCount(), is(equalTo(2L)));
+        assertThat("Interceptor overhead count is incorrect", registry.getHistograms().get(PREFIX + "interceptors.counted.overhead").getCount(), is(equalTo(0L)));
+        assertThat("Plan cache hit count is incorrect", registry.getCounters().get(PREFIX + "caches.plans.hits").getCount(), is(equalTo(1L)));
+        assertThat("Plan cache miss count is incorrect", registry.getCounters().get(PREFIX + "caches.plans.misses").getCount(), is(equalTo(1L)));
+        assertThat("Plan cache hit ratio is incorrect", registry.getGauges().get(PREFIX + "caches.plans.hitRatio").getValue(), is(equalTo((Object) 0.5D)));
+    }
+}
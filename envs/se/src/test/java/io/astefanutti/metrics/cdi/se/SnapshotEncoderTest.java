@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.HdrHistogramReservoir;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import io.astefanutti.metrics.cdi.exporters.BucketHistogram;
+import io.astefanutti.metrics.cdi.exporters.SnapshotEncoder;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(Arquillian.class)
+public class SnapshotEncoderTest {
+
+    private final static String TIMER_NAME = MetricRegistry.name(TimedMethodBean.class, "timedMethod");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(TimedMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private TimedMethodBean bean;
+
+    @Test
+    public void encodeAndMergeSnapshots() throws IOException {
+        bean.timedMethod();
+        bean.timedMethod();
+        registry.counter("counter").inc();
+        Histogram histogram = registry.histogram("histogram");
+        for (int i = 1; i <= 1000; i++)
+            histogram.update(i * 1000L);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new SnapshotEncoder(registry, MetricFilter.ALL, BucketHistogram.DEFAULT_PRECISION).encode(output);
+        SortedMap<String, BucketHistogram> histograms = SnapshotEncoder.decode(new ByteArrayInputStream(output.toByteArray()));
+
+        assertThat("Snapshots are not encoded correctly", histograms, allOf(hasKey(TIMER_NAME), hasKey("histogram"), not(hasKey("counter"))));
+        assertThat("Timer count is incorrect", histograms.get(TIMER_NAME).getCount(), is(equalTo(2L)));
+        assertThat("Encoded snapshots are not compact", output.size(), is(lessThan(500)));
+
+        BucketHistogram decoded = histograms.get("histogram");
+        assertThat("Histogram count is incorrect", decoded.getCount(), is(equalTo(1000L)));
+        assertThat("Histogram median is incorrect", (double) Math.abs(decoded.getValue(0.5) - 500000L), is(lessThan(500000 * 0.04)));
+
+        // Histograms of the same precision merge accurately
+        decoded.merge(BucketHistogram.of(histogram.getSnapshot(), histogram.getCount(), BucketHistogram.DEFAULT_PRECISION));
+        assertThat("Merged histogram count is incorrect", decoded.getCount(), is(equalTo(2000L)));
+        assertThat("Merged histogram 99th percentile is incorrect", (double) Math.abs(decoded.getValue(0.99) - 990000L), is(lessThan(990000 * 0.04)));
+    }
+
+    @Test
+    public void encodeWeightedSnapshot() throws IOException {
+        ManualClock clock = new ManualClock();
+        Histogram histogram = registry.register("weighted", new Histogram(new ExponentiallyDecayingReservoir(4096, 0.015, clock)));
+        for (int i = 0; i < 1000; i++)
+            histogram.update(1000L);
+        // The values recorded 5 minutes later weigh e^4.5 times more
+        clock.tick = TimeUnit.MINUTES.toNanos(5);
+        for (int i = 0; i < 1000; i++)
+            histogram.update(1000000L);
+
+        BucketHistogram decoded = encode().get("weighted");
+        assertThat("Histogram count is incorrect", decoded.getCount(), is(equalTo(2000L)));
+        assertThat("Histogram 25th percentile is not weighted", (double) Math.abs(decoded.getValue(0.25) - 1000000L), is(lessThan(1000000 * 0.04)));
+        assertThat("Histogram minimum is incorrect", (double) Math.abs(decoded.getValue(0.0) - 1000L), is(lessThan(1000 * 0.04)));
+    }
+
+    @Test
+    public void encodeHdrHistogramSnapshot() throws IOException {
+        Histogram histogram = registry.register("hdr", new Histogram(new HdrHistogramReservoir()));
+        for (int i = 0; i < 2000000; i++)
+            histogram.update(i % 1000 * 1000L + 1000L);
+
+        BucketHistogram decoded = encode().get("hdr");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        decoded.encode(output);
+
+        assertThat("Encoded snapshot is not compact", output.size(), is(lessThan(1000)));
+        assertThat("Histogram count is incorrect", decoded.getCount(), is(equalTo(2000000L)));
+        assertThat("Histogram median is incorrect", (double) Math.abs(decoded.getValue(0.5) - 500000L), is(lessThan(500000 * 0.04)));
+        assertThat("Histogram 99th percentile is incorrect", (double) Math.abs(decoded.getValue(0.99) - 990000L), is(lessThan(990000 * 0.04)));
+    }
+
+    @Test
+    public void decodeMalformedStreams() {
+        // A negative metric name length
+        assertMalformed(new byte[] {SnapshotEncoder.VERSION, 1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 1});
+        // A metric name longer than the stream
+        assertMalformed(new byte[] {SnapshotEncoder.VERSION, 1, -1, -1, -1, -1, 7, 'a'});
+        // Bucket indexes that are not ascending
+        assertMalformed(new byte[] {SnapshotEncoder.VERSION, 1, 1, 'a', 5, 2, 2, 0, 1, 0, 1, 0});
+        // A bucket index out of range
+        assertMalformed(new byte[] {SnapshotEncoder.VERSION, 1, 1, 'a', 5, 1, 1, -1, -1, -1, -1, 15, 1, 0});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeDifferentPrecisions() {
+        new BucketHistogram(BucketHistogram.DEFAULT_PRECISION).merge(new BucketHistogram(BucketHistogram.DEFAULT_PRECISION + 1));
+    }
+
+    private static void assertMalformed(byte[] stream) {
+        try {
+            SnapshotEncoder.decode(new ByteArrayInputStream(stream));
+            fail("Malformed stream is decoded");
+        } catch (IOException expected) {
+            // Malformed streams are reported as I/O errors
+        }
+    }
+
+    private SortedMap<String, BucketHistogram> encode() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new SnapshotEncoder(registry, MetricFilter.ALL, BucketHistogram.DEFAULT_PRECISION).encode(output);
+        return SnapshotEncoder.decode(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    private static final class ManualClock extends Clock {
+
+        private long tick;
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+
+        @Override
+        public long getTime() {
+            return TimeUnit.NANOSECONDS.toMillis(tick);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import io.astefanutti.metrics.cdi.TaggedName;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class TaggedMethodBeanTest {
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(TaggedMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration) {
+        configuration.maxTagCombinations(2);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private TaggedMethodBean bean;
+
+    @Test
+    public void staticTagsOnInjectionPoint() {
+        bean.hit();
+
+        String name = "hits{region=us,zone=a}";
+        assertThat("Meter is not registered correctly", registry.getMeters(), hasKey(name));
+        assertThat("Meter count is incorrect", registry.getMeters().get(name).getCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void parameterTagsWithOverflow() {
+        bean.call("acme");
+        bean.call("acme");
+        bean.call("globex");
+        bean.call("initech");
+        bean.call("umbrella");
+
+        assertThat("Counters are not registered correctly", registry.getCounters(), not(hasKey("calls")));
+        assertCounter("calls{region=eu,tenant=acme}", 2L);
+        assertCounter("calls{region=eu,tenant=globex}", 1L);
+        assertThat("Counters are not registered correctly", registry.getCounters(), not(hasKey("calls{region=eu,tenant=initech}")));
+        assertCounter("calls{region=eu,tenant=" + TaggedName.OVERFLOW + "}", 2L);
+    }
+
+    @Test
+    public void decodeParameterTags() {
+        bean.request("acme", 1);
+
+        String name = "requests{endpoint=1,region=us,tenant=acme}";
+        assertThat("Timer is not registered correctly", registry.getTimers(), hasKey(name));
+        Timer timer = registry.getTimers().get(name);
+        assertThat("Timer count is incorrect", timer.getCount(), is(equalTo(1L)));
+
+        TaggedName tagged = TaggedName.of(name);
+        assertThat("Metric name is incorrect", tagged.getName(), is(equalTo("requests")));
+        assertThat("Metric tags are incorrect", tagged.getTags(), hasEntry("tenant", "acme"));
+        assertThat("Metric tags are incorrect", tagged.getTags(), hasEntry("region", "us"));
+        assertThat("Metric tags are incorrect", tagged.getTags(), hasEntry("endpoint", "1"));
+        assertThat("Metric name is not encoded correctly", tagged.toString(), is(equalTo(name)));
+    }
+
+    @Test
+    public void evictParameterTags() {
+        bean.request("globex", 2);
+        bean.request("globex", 2);
+
+        String name = "requests{endpoint=2,region=us,tenant=globex}";
+        assertThat("Timer is not registered correctly", registry.getTimers(), hasKey(name));
+        assertThat("Timer count is incorrect", registry.getTimers().get(name).getCount(), is(equalTo(2L)));
+
+        // The combination is registered again once its metric has been removed
+        registry.remove(name);
+        bean.request("globex", 2);
+        assertThat("Timer is not registered correctly", registry.getTimers(), hasKey(name));
+        assertThat("Timer count is incorrect", registry.getTimers().get(name).getCount(), is(equalTo(1L)));
+    }
+
+    private void assertCounter(String name, long count) {
+        assertThat("Counter is not registered correctly", registry.getCounters(), hasKey(name));
+        Counter counter = registry.getCounters().get(name);
+        assertThat("Counter count is incorrect", counter.getCount(), is(equalTo(count)));
+    }
+}
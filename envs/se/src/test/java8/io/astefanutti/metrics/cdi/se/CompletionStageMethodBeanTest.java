@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class CompletionStageMethodBeanTest {
+
+    private final static String TIMER_NAME = MetricRegistry.name(CompletionStageMethodBean.class, "completionStageTimedMethod");
+
+    private final static String COUNTER_NAME = MetricRegistry.name(CompletionStageMethodBean.class, "completionStageCountedMethod");
+
+    private final static String METER_NAME = MetricRegistry.name(CompletionStageMethodBean.class, "completionStageExceptionMeteredMethod");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(CompletionStageMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private CompletionStageMethodBean bean;
+
+    @Test
+    public void timerStoppedOnCompletion() {
+        assertThat("Timer is not registered correctly", registry.getTimers(), hasKey(TIMER_NAME));
+        Timer timer = registry.getTimers().get(TIMER_NAME);
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        bean.completionStageTimedMethod(future);
+
+        // The timer must not be stopped before the returned stage completes
+        assertThat("Timer count is incorrect", timer.getCount(), is(equalTo(0L)));
+
+        future.complete("value");
+        assertThat("Timer count is incorrect", timer.getCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void counterDecrementedOnCompletion() {
+        assertThat("Counter is not registered correctly", registry.getCounters(), hasKey(COUNTER_NAME));
+        Counter counter = registry.getCounters().get(COUNTER_NAME);
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        bean.completionStageCountedMethod(future);
+
+        // The counter must not be decremented before the returned stage completes
+        assertThat("Counter count is incorrect", counter.getCount(), is(equalTo(1L)));
+
+        future.complete("value");
+        assertThat("Counter count is incorrect", counter.getCount(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void meterMarkedOnExceptionalCompletion() {
+        assertThat("Meter is not registered correctly", registry.getMeters(), hasKey(METER_NAME));
+        Meter meter = registry.getMeters().get(METER_NAME);
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        bean.completionStageExceptionMeteredMethod(future);
+        assertThat("Meter count is incorrect", meter.getCount(), is(equalTo(0L)));
+
+        future.completeExceptionally(new IllegalStateException());
+        assertThat("Meter count is incorrect", meter.getCount(), is(equalTo(1L)));
+
+        // The failure of a dependent stage is wrapped into a CompletionException
+        CompletableFuture<String> source = new CompletableFuture<>();
+        bean.completionStageExceptionMeteredMethod(source.thenApply(value -> value));
+        source.completeExceptionally(new IllegalStateException());
+        assertThat("Meter count is incorrect", meter.getCount(), is(equalTo(2L)));
+
+        // Other exceptions are not metered
+        future = new CompletableFuture<>();
+        bean.completionStageExceptionMeteredMethod(future);
+        future.completeExceptionally(new IllegalArgumentException());
+        assertThat("Meter count is incorrect", meter.getCount(), is(equalTo(2L)));
+    }
+}
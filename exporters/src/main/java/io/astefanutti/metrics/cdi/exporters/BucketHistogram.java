@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.WeightedSnapshot;
+import io.astefanutti.metrics.cdi.BucketSnapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A histogram that counts values into log-linear buckets, so that it can be encoded compactly and merged accurately
+ * with the histograms of other nodes using the same precision.
+ *
+ * Values lower than {@code 2^precision} get their own bucket, while greater values are counted in buckets whose width
+ * is lower than {@code 1 / 2^precision} of their lower bound, e.g. 3% for a precision of {@code 5}.
+ * Negative values are counted in buckets symmetrical to the positive ones.
+ *
+ * The encoding is made of the precision, the count and the number of non-empty buckets followed by the index
+ * and the count of each non-empty bucket, in ascending order of index, with the index of the first bucket zigzag
+ * encoded and the following ones as the difference with the previous one, all as variable-length integers with
+ * 7 bits per byte and the most significant bit set on all bytes but the last.
+ */
+public final class BucketHistogram {
+
+    /**
+     * The default precision, i.e. buckets narrower than 3% of their lower bound.
+     */
+    public static final int DEFAULT_PRECISION = 5;
+
+    // The number of bisection steps of the quantile function of weighted snapshots, i.e. a precision of 2^-32 of the weights
+    private static final int BISECTIONS = 32;
+
+    private final int precision;
+
+    private final TreeMap<Integer, Long> buckets = new TreeMap<>();
+
+    private long count;
+
+    /**
+     * @param precision the number of bits of the sub-bucket indexes, between {@code 1} and {@code 16}
+     * @throws IllegalArgumentException if {@code precision} is out of bounds
+     */
+    public BucketHistogram(int precision) {
+        if (precision < 1 || precision > 16)
+            throw new IllegalArgumentException("Precision [" + precision + "] must be between 1 and 16!");
+        this.precision = precision;
+    }
+
+    /**
+     * Creates a histogram from the values of the given snapshot. When the snapshot contains a sample of the
+     * {@code count} recorded values, e.g. the snapshot of an exponentially decaying reservoir, the bucket
+     * counts are scaled, with the largest remainder method so that they sum to {@code count}, and the merged
+     * histograms of different nodes are weighted by their count.
+     *
+     * The values of a {@link WeightedSnapshot} are counted according to their weight, recovered from its quantile
+     * function, and the buckets of a {@link BucketSnapshot}, e.g. the snapshot of an
+     * {@link io.astefanutti.metrics.cdi.HdrHistogramReservoir}, are counted without expanding each of the recorded values.
+     *
+     * @param snapshot  the snapshot of a histogram or a timer
+     * @param count     the number of values recorded by the histogram or the timer
+     * @param precision the number of bits of the sub-bucket indexes
+     * @return the histogram of the snapshot values
+     */
+    public static BucketHistogram of(Snapshot snapshot, long count, int precision) {
+        BucketHistogram histogram = new BucketHistogram(precision);
+        // The share of the snapshot values in each bucket
+        TreeMap<Integer, Double> shares = new TreeMap<>();
+        if (snapshot instanceof BucketSnapshot) {
+            long[] values = ((BucketSnapshot) snapshot).getValues();
+            long[] counts = ((BucketSnapshot) snapshot).getCounts();
+            for (int i = 0; i < values.length; i++)
+                histogram.share(shares, values[i], counts[i]);
+        } else if (snapshot instanceof WeightedSnapshot) {
+            long[] values = snapshot.getValues();
+            double cumulated = 0.0;
+            for (int i = 0; i < values.length; i++) {
+                // The weight of equal values is carried by the last one
+                if (i + 1 < values.length && values[i + 1] == values[i])
+                    continue;
+                double upper = i + 1 < values.length ? quantile(snapshot, values[i], cumulated) : 1.0;
+                histogram.share(shares, values[i], upper - cumulated);
+                cumulated = upper;
+            }
+        } else {
+            for (long value : snapshot.getValues())
+                histogram.share(shares, value, 1.0);
+        }
+
+        histogram.distribute(shares, count);
+        histogram.count = count;
+        return histogram;
+    }
+
+    /**
+     * Decodes a histogram.
+     *
+     * @param input the input stream to read the histogram from
+     * @return the decoded histogram
+     * @throws IOException if an I/O error occurs or the encoding is malformed
+     */
+    public static BucketHistogram decode(InputStream input) throws IOException {
+        long precision = Varints.read(input);
+        if (precision < 1 || precision > 16)
+            throw new IOException("Malformed histogram precision [" + precision + "]");
+        BucketHistogram histogram = new BucketHistogram((int) precision);
+        histogram.count = Varints.read(input);
+        if (histogram.count < 0L)
+            throw new IOException("Malformed histogram count [" + histogram.count + "]");
+
+        // The indexes range from the bucket of the lowest value to the bucket of the greatest one
+        long max = histogram.index(Long.MAX_VALUE);
+        long min = histogram.index(Long.MIN_VALUE);
+        long size = Varints.read(input);
+        if (size < 0L || size > max - min + 1L)
+            throw new IOException("Malformed histogram size [" + size + "]");
+        long index = 0L;
+        for (long i = 0; i < size; i++) {
+            if (i == 0) {
+                index = Varints.readSigned(input);
+                if (index < min || index > max)
+                    throw new IOException("Malformed histogram bucket index [" + index + "]");
+            } else {
+                long delta = Varints.read(input);
+                if (delta < 1L || delta > max - index)
+                    throw new IOException("Malformed histogram bucket index delta [" + delta + "]");
+                index += delta;
+            }
+            long count = Varints.read(input);
+            if (count < 0L)
+                throw new IOException("Malformed histogram bucket count [" + count + "]");
+            histogram.add((int) index, count);
+        }
+        return histogram;
+    }
+
+    /**
+     * Records the given value.
+     *
+     * @param value the value to record
+     */
+    public void update(long value) {
+        add(index(value), 1L);
+        count++;
+    }
+
+    /**
+     * Adds the counts of the given histogram to this histogram.
+     *
+     * @param histogram the histogram to merge
+     * @throws IllegalArgumentException if the histograms do not have the same precision
+     */
+    public void merge(BucketHistogram histogram) {
+        if (histogram.precision != precision)
+            throw new IllegalArgumentException("Cannot merge histograms with different precisions [" + precision + "] and [" + histogram.precision + "]");
+        for (Map.Entry<Integer, Long> bucket : histogram.buckets.entrySet())
+            add(bucket.getKey(), bucket.getValue());
+        count += histogram.count;
+    }
+
+    /**
+     * Encodes this histogram.
+     *
+     * @param output the output stream to write the histogram to
+     * @throws IOException if an I/O error occurs
+     */
+    public void encode(OutputStream output) throws IOException {
+        Varints.write(output, precision);
+        Varints.write(output, count);
+        Varints.write(output, buckets.size());
+        Integer previous = null;
+        for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+            if (previous == null)
+                Varints.writeSigned(output, bucket.getKey());
+            else
+                Varints.write(output, (long) bucket.getKey() - previous);
+            Varints.write(output, bucket.getValue());
+            previous = bucket.getKey();
+        }
+    }
+
+    /**
+     * @return the number of bits of the sub-bucket indexes
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return the number of values recorded by the histogram or timer this histogram has been created from
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the value at the given quantile, i.e. the middle of the bucket the quantile falls into.
+     *
+     * @param quantile the quantile, in {@code [0..1]}
+     * @return the value at the given quantile, or {@code 0} if the histogram is empty
+     * @throws IllegalArgumentException if {@code quantile} is out of bounds
+     */
+    public long getValue(double quantile) {
+        if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile))
+            throw new IllegalArgumentException(quantile + " is not in [0..1]");
+
+        long total = 0L;
+        for (long bucket : buckets.values())
+            total += bucket;
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long cumulated = 0L;
+        for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+            cumulated += bucket.getValue();
+            if (cumulated >= rank)
+                return middle(bucket.getKey());
+        }
+        return 0L;
+    }
+
+    private void share(TreeMap<Integer, Double> shares, long value, double share) {
+        int index = index(value);
+        Double previous = shares.get(index);
+        shares.put(index, previous == null ? share : previous + share);
+    }
+
+    // The lowest quantile whose value is greater than the given value, i.e. the cumulated weight of the values lower than
+    // or equal to it, found by bisection of the step quantile function of the weighted snapshot above the given quantile
+    private static double quantile(Snapshot snapshot, long value, double lower) {
+        double upper = 1.0;
+        for (int i = 0; i < BISECTIONS; i++) {
+            double middle = (lower + upper) / 2.0;
+            if (snapshot.getValue(middle) > value)
+                upper = middle;
+            else
+                lower = middle;
+        }
+        return upper;
+    }
+
+    // Distributes the count over the buckets in proportion to their share with the largest remainder method,
+    // so that the bucket counts sum to the count and the buckets with tiny shares are not inflated
+    private void distribute(TreeMap<Integer, Double> shares, long count) {
+        double total = 0.0;
+        for (double share : shares.values())
+            total += share;
+        if (total <= 0.0 || count <= 0L)
+            return;
+
+        final int[] indexes = new int[shares.size()];
+        final long[] counts = new long[indexes.length];
+        final double[] remainders = new double[indexes.length];
+        Integer[] order = new Integer[indexes.length];
+        long distributed = 0L;
+        int i = 0;
+        for (Map.Entry<Integer, Double> share : shares.entrySet()) {
+            double exact = share.getValue() / total * count;
+            indexes[i] = share.getKey();
+            counts[i] = (long) Math.floor(exact);
+            remainders[i] = exact - counts[i];
+            distributed += counts[i];
+            order[i] = i;
+            i++;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return Double.compare(remainders[second], remainders[first]);
+            }
+        });
+        for (int j = 0; distributed < count; j = (j + 1) % order.length, distributed++)
+            counts[order[j]]++;
+
+        for (int j = 0; j < indexes.length; j++)
+            if (counts[j] > 0L)
+                add(indexes[j], counts[j]);
+    }
+
+    private void add(int index, long count) {
+        Long previous = buckets.get(index);
+        buckets.put(index, previous == null ? count : previous + count);
+    }
+
+    private int index(long value) {
+        // Negative values are counted in the buckets mirroring the ones of the non-negative values
+        if (value < 0)
+            return -index(-(value + 1)) - 1;
+        if (value < 1L << precision)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - precision;
+        long mantissa = (value >>> shift) & ((1L << precision) - 1);
+        return (int) (((shift + 1L) << precision) | mantissa);
+    }
+
+    private long middle(int index) {
+        if (index < 0)
+            return -middle(-(index + 1)) - 1;
+        if (index < 1 << precision)
+            return index;
+        int shift = (index >>> precision) - 1;
+        long lower = ((1L << precision) | (index & ((1L << precision) - 1))) << shift;
+        return lower + ((1L << shift) - 1) / 2;
+    }
+}
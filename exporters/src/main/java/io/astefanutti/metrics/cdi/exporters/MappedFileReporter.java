@@ -0,0 +1,392 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the counters, histograms, meters and timers of a {@link MetricRegistry} into a memory-mapped file
+ * with a fixed binary layout, so that a process on the same host can read them from its own mapping of the file,
+ * without system calls nor any work on the application threads. The file is only written by the reporting thread,
+ * e.g. the Metrics CDI scheduler when the reporter is added with
+ * {@link io.astefanutti.metrics.cdi.MetricsConfiguration#reporter(ScheduledReporter, long, TimeUnit)}.
+ *
+ * The file is little-endian and made of a {@value #HEADER_SIZE}-byte header followed by {@code capacity}
+ * entries of {@value #ENTRY_SIZE} bytes. The header contains:
+ * <ul>
+ * <li>at offset 0, the {@value #MAGIC} magic number as an {@code int},</li>
+ * <li>at offset 4, the {@value #VERSION} layout version as an {@code int},</li>
+ * <li>at offset 8, the sequence number of the publications as a {@code long},</li>
+ * <li>at offset 16, the time of the last publication in milliseconds since the epoch as a {@code long},</li>
+ * <li>at offset 24, the number of published entries as an {@code int},</li>
+ * <li>at offset 28, the size of an entry as an {@code int},</li>
+ * <li>at offset 32, the capacity of the file in entries as an {@code int},</li>
+ * <li>at offset 36, the number of metrics that could not be published, as the file is full or their name is too long, as an {@code int}.</li>
+ * </ul>
+ * Each entry contains the type of the metric as an {@code int} at offset 0, i.e. {@value #COUNTER} for counters,
+ * {@value #HISTOGRAM} for histograms, {@value #METER} for meters and {@value #TIMER} for timers, the length of its
+ * UTF-8 encoded name, at most {@value #NAME_SIZE} bytes, as an {@code int} at offset 4, its name at offset 8, its count
+ * as a {@code long} at offset {@value #VALUES}, followed by {@code double} values: the mean, 1-minute, 5-minute and
+ * 15-minute rates per second for meters, the minimum, maximum, mean, standard deviation and 50th, 75th, 95th, 98th, 99th
+ * and 99.9th percentiles for histograms, and the meter values followed by the histogram values, in nanoseconds, for timers.
+ *
+ * The publications are guarded by a sequence lock on the sequence number at offset 8, that the reporter sets to an
+ * odd value, with a volatile store, before it writes the entries and the other header fields, and to the next even
+ * value, with a release store following a store fence, once it is done. A reader, in any process mapping the file,
+ * must take a consistent copy of the publication as follows:
+ * <ol>
+ * <li>read the sequence number with acquire semantics, e.g. a volatile or atomic load of the mapped memory,
+ * and start over if it is odd,</li>
+ * <li>copy the header fields and the entries it needs, without interpreting them as they can be torn,</li>
+ * <li>issue a load fence, e.g. {@code Unsafe.loadFence()} in Java 8 or {@code std::atomic_thread_fence(std::memory_order_acquire)} in C++,</li>
+ * <li>read the sequence number again and start over if it differs from the first read.</li>
+ * </ol>
+ * Plain reads of the sequence number, e.g. with a {@link java.nio.ByteBuffer}, do not prevent the reads of the
+ * entries from being reordered around them, on ARM or POWER notably, and are not enough to detect torn copies.
+ */
+public class MappedFileReporter extends ScheduledReporter {
+
+    /**
+     * The magic number of the file, i.e. {@code MCDI} in ASCII.
+     */
+    public static final int MAGIC = 0x4D434449;
+
+    /**
+     * The version of the file layout.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size in bytes of the file header.
+     */
+    public static final int HEADER_SIZE = 64;
+
+    /**
+     * The size in bytes of an entry.
+     */
+    public static final int ENTRY_SIZE = 512;
+
+    /**
+     * The maximum size in bytes of the UTF-8 encoded name of a published metric.
+     */
+    public static final int NAME_SIZE = 376;
+
+    /**
+     * The offset of the values within an entry.
+     */
+    public static final int VALUES = 8 + NAME_SIZE;
+
+    /**
+     * The types of the published metrics.
+     */
+    public static final int COUNTER = 1;
+
+    public static final int HISTOGRAM = 2;
+
+    public static final int METER = 3;
+
+    public static final int TIMER = 4;
+
+    private static final int SEQUENCE = 8;
+
+    private static final int TIMESTAMP = 16;
+
+    private static final int COUNT = 24;
+
+    private static final int DROPPED = 36;
+
+    // The sun.misc.Unsafe methods are bound reflectively so that the internal API is not referenced at compile time
+    private static final MethodHandle GET_LONG;
+
+    private static final MethodHandle PUT_LONG_VOLATILE;
+
+    private static final MethodHandle PUT_ORDERED_LONG;
+
+    // Unsafe.storeFence is only available from Java 8
+    private static final MethodHandle STORE_FENCE;
+
+    // The offset of the address field of the direct buffers
+    private static final long ADDRESS;
+
+    static {
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            GET_LONG = lookup.findVirtual(type, "getLong", MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+            PUT_LONG_VOLATILE = lookup.findVirtual(type, "putLongVolatile", MethodType.methodType(void.class, Object.class, long.class, long.class)).bindTo(unsafe);
+            PUT_ORDERED_LONG = lookup.findVirtual(type, "putOrderedLong", MethodType.methodType(void.class, Object.class, long.class, long.class)).bindTo(unsafe);
+            MethodHandle offset = lookup.findVirtual(type, "objectFieldOffset", MethodType.methodType(long.class, Field.class)).bindTo(unsafe);
+            ADDRESS = (long) offset.invokeExact(Buffer.class.getDeclaredField("address"));
+
+            MethodHandle fence;
+            try {
+                fence = lookup.findVirtual(type, "storeFence", MethodType.methodType(void.class)).bindTo(unsafe);
+            } catch (NoSuchMethodException cause) {
+                fence = null;
+            }
+            STORE_FENCE = fence;
+        } catch (Throwable cause) {
+            throw new ExceptionInInitializerError(cause);
+        }
+    }
+
+    private final RandomAccessFile file;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+
+    // The address of the sequence number in the mapped memory
+    private final long address;
+
+    // The even sequence number of the last publication, only accessed by the reporting thread
+    private long sequence;
+
+    // The encoded metric names, only accessed by the reporting thread
+    private final Map<String, byte[]> names = new HashMap<>();
+
+    /**
+     * Creates a reporter publishing all the metrics of the given registry into the given file, created or truncated.
+     *
+     * @param registry the metric registry to publish
+     * @param file     the file to map
+     * @param capacity the maximum number of published metrics
+     * @throws IOException if the file cannot be mapped
+     */
+    public MappedFileReporter(MetricRegistry registry, File file, int capacity) throws IOException {
+        this(registry, MetricFilter.ALL, file, capacity);
+    }
+
+    /**
+     * Creates a reporter publishing the filtered metrics of the given registry into the given file, created or truncated.
+     *
+     * @param registry the metric registry to publish
+     * @param filter   the filter of the published metrics
+     * @param file     the file to map
+     * @param capacity the maximum number of published metrics
+     * @throws IOException if the file cannot be mapped
+     */
+    public MappedFileReporter(MetricRegistry registry, MetricFilter filter, File file, int capacity) throws IOException {
+        super(registry, "mapped-file-reporter", filter, TimeUnit.SECONDS, TimeUnit.NANOSECONDS);
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive!");
+        this.capacity = capacity;
+        this.file = new RandomAccessFile(file, "rw");
+        long size = HEADER_SIZE + (long) capacity * ENTRY_SIZE;
+        try {
+            this.file.setLength(0L);
+            this.file.setLength(size);
+            buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, size);
+        } catch (IOException cause) {
+            this.file.close();
+            throw cause;
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(28, ENTRY_SIZE);
+        buffer.putInt(32, capacity);
+        address = getLong(buffer, ADDRESS) + SEQUENCE;
+    }
+
+    @Override
+    public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+        // The volatile store of the odd sequence number followed by a store fence orders it before the entries
+        putLongVolatile(sequence + 1);
+        storeFence(sequence + 1);
+        try {
+            write(counters, histograms, meters, timers);
+        } finally {
+            // The store fence orders the entries before the release store of the even sequence number, that is
+            // published even if a metric fails so that the sequence number remains odd only while writing
+            storeFence(sequence + 1);
+            sequence += 2;
+            putOrderedLong(sequence);
+        }
+
+        // Forgets the names of the removed metrics
+        if (names.size() > 2 * capacity)
+            names.clear();
+    }
+
+    private void write(SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+        int count = 0;
+        int dropped = 0;
+        for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+            if (entry(count, COUNTER, counter.getKey(), counter.getValue().getCount()))
+                count++;
+            else
+                dropped++;
+        }
+        for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+            if (entry(count, HISTOGRAM, histogram.getKey(), histogram.getValue().getCount())) {
+                snapshot(count++, 0, histogram.getValue().getSnapshot());
+            } else {
+                dropped++;
+            }
+        }
+        for (Map.Entry<String, Meter> meter : meters.entrySet()) {
+            if (entry(count, METER, meter.getKey(), meter.getValue().getCount())) {
+                rates(count++, meter.getValue());
+            } else {
+                dropped++;
+            }
+        }
+        for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+            if (entry(count, TIMER, timer.getKey(), timer.getValue().getCount())) {
+                rates(count, timer.getValue().getMeanRate(), timer.getValue().getOneMinuteRate(), timer.getValue().getFiveMinuteRate(), timer.getValue().getFifteenMinuteRate());
+                snapshot(count++, 4, timer.getValue().getSnapshot());
+            } else {
+                dropped++;
+            }
+        }
+        buffer.putLong(TIMESTAMP, System.currentTimeMillis());
+        buffer.putInt(COUNT, count);
+        buffer.putInt(DROPPED, dropped);
+    }
+
+    /**
+     * Stops the reporter and releases the file, whose content is left as is.
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        try {
+            file.close();
+        } catch (IOException cause) {
+            throw new IllegalStateException("Unable to close mapped file", cause);
+        }
+    }
+
+    // Writes the header of the entry, returns false if it cannot be published
+    private boolean entry(int index, int type, String name, long count) {
+        byte[] encoded = names.get(name);
+        if (encoded == null) {
+            encoded = name.getBytes(TextBuffer.UTF_8);
+            names.put(name, encoded);
+        }
+        if (index >= capacity || encoded.length > NAME_SIZE)
+            return false;
+
+        int offset = offset(index);
+        buffer.putInt(offset, type);
+        buffer.putInt(offset + 4, encoded.length);
+        for (int i = 0; i < encoded.length; i++)
+            buffer.put(offset + 8 + i, encoded[i]);
+        buffer.putLong(offset + VALUES, count);
+        return true;
+    }
+
+    private void rates(int index, Meter meter) {
+        rates(index, meter.getMeanRate(), meter.getOneMinuteRate(), meter.getFiveMinuteRate(), meter.getFifteenMinuteRate());
+    }
+
+    private void rates(int index, double mean, double m1, double m5, double m15) {
+        int offset = offset(index) + VALUES + 8;
+        buffer.putDouble(offset, convertRate(mean));
+        buffer.putDouble(offset + 8, convertRate(m1));
+        buffer.putDouble(offset + 16, convertRate(m5));
+        buffer.putDouble(offset + 24, convertRate(m15));
+    }
+
+    // Writes the snapshot values after the given number of values
+    private void snapshot(int index, int position, Snapshot snapshot) {
+        int offset = offset(index) + VALUES + 8 + position * 8;
+        buffer.putDouble(offset, snapshot.getMin());
+        buffer.putDouble(offset + 8, snapshot.getMax());
+        buffer.putDouble(offset + 16, snapshot.getMean());
+        buffer.putDouble(offset + 24, snapshot.getStdDev());
+        buffer.putDouble(offset + 32, snapshot.getMedian());
+        buffer.putDouble(offset + 40, snapshot.get75thPercentile());
+        buffer.putDouble(offset + 48, snapshot.get95thPercentile());
+        buffer.putDouble(offset + 56, snapshot.get98thPercentile());
+        buffer.putDouble(offset + 64, snapshot.get99thPercentile());
+        buffer.putDouble(offset + 72, snapshot.get999thPercentile());
+    }
+
+    private void storeFence(long sequence) {
+        if (STORE_FENCE != null) {
+            try {
+                STORE_FENCE.invokeExact();
+            } catch (Throwable cause) {
+                throw new IllegalStateException(cause);
+            }
+        } else {
+            // Volatile stores are followed by a full fence with Java 7 HotSpot
+            putLongVolatile(sequence);
+        }
+    }
+
+    private void putLongVolatile(long sequence) {
+        try {
+            PUT_LONG_VOLATILE.invokeExact((Object) null, address, littleEndian(sequence));
+        } catch (Throwable cause) {
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void putOrderedLong(long sequence) {
+        try {
+            PUT_ORDERED_LONG.invokeExact((Object) null, address, littleEndian(sequence));
+        } catch (Throwable cause) {
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static long getLong(Object object, long offset) {
+        try {
+            return (long) GET_LONG.invokeExact(object, offset);
+        } catch (Throwable cause) {
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // Unsafe accesses use the native byte order while the file is little-endian
+    private static long littleEndian(long value) {
+        return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    private static int offset(int index) {
+        return HEADER_SIZE + index * ENTRY_SIZE;
+    }
+}
@@ -0,0 +1,452 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Sampling;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import io.astefanutti.metrics.cdi.TaggedName;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Writes the metrics of a {@link MetricRegistry} in the Prometheus text exposition format, version {@code 0.0.4}.
+ *
+ * The exporter tracks the metrics registered and removed with a registry listener and encodes the name and the
+ * labels of each series once, when its metric gets registered, so that a scrape only encodes the sampled values,
+ * directly into a reusable buffer written to the output stream, without materializing the metrics of the registry.
+ *
+ * The tags of the metrics registered with names of the form {@code name{key=value}}, see {@link TaggedName},
+ * are exposed as labels. Counters and gauges with a numeric or boolean value are exposed as gauges, meters
+ * as counters suffixed with {@code _total}, and histograms and timers as summaries, with the quantiles of the timers
+ * in seconds. The summaries do not expose their optional {@code _sum} sample, as the sampled reservoirs cannot provide
+ * the running sum of the recorded values that Prometheus expects from that counter.
+ *
+ * Distinct metric names may be sanitized into the same series, e.g. {@code a.b} and {@code a_b}, into families
+ * of different types with the same name, or into the samples derived from a summary, e.g. {@code a_count}. As Prometheus rejects duplicate series, only the first metric tracked by the
+ * exporter is exposed, the colliding ones being exposed once that metric gets removed.
+ */
+public final class PrometheusExporter implements Closeable {
+
+    /**
+     * The content type of the Prometheus text exposition format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+
+    private final MetricRegistry registry;
+
+    private final MetricRegistryListener listener = new Listener();
+
+    // The series grouped by family name so that the samples of a family are exposed together
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<>();
+
+    // The registry names of the exposed series by identity of their samples, guarded by this
+    private final Map<String, String> identities = new HashMap<>();
+
+    // The series colliding with exposed series by registry name, guarded by this
+    private final Map<String, Series> shadowed = new LinkedHashMap<>();
+
+    // The buffers released by the previous scrapes
+    private final Queue<TextBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates an exporter of the metrics of the given registry, including the metrics already registered.
+     * It must be closed to stop tracking the registry.
+     *
+     * @param registry the metric registry to export
+     */
+    public PrometheusExporter(MetricRegistry registry) {
+        this.registry = registry;
+        registry.addListener(listener);
+    }
+
+    /**
+     * Writes the current samples of the metrics of the registry to the given output stream, that is not closed.
+     *
+     * @param output the output stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(OutputStream output) throws IOException {
+        TextBuffer buffer = buffers.poll();
+        if (buffer == null)
+            buffer = new TextBuffer(BUFFER_SIZE);
+        try {
+            buffer.reset(output);
+            for (Family family : families.values())
+                family.write(buffer);
+            buffer.flush();
+        } finally {
+            buffer.reset(null);
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Stops tracking the metrics of the registry.
+     */
+    @Override
+    public void close() {
+        registry.removeListener(listener);
+        synchronized (this) {
+            families.clear();
+            series.clear();
+            identities.clear();
+            shadowed.clear();
+        }
+    }
+
+    private synchronized void add(String name, Series added) {
+        remove(name);
+        if (!expose(name, added))
+            shadowed.put(name, added);
+    }
+
+    // Returns false if the series collides with an exposed series, guarded by this
+    private boolean expose(String name, Series added) {
+        for (String identity : added.identities)
+            if (identities.containsKey(identity))
+                return false;
+        Family family = families.get(added.name);
+        if (family == null) {
+            family = new Family(added.name, added.type);
+            families.put(added.name, family);
+        } else if (!family.type.equals(added.type)) {
+            return false;
+        }
+        family.series.put(name, added);
+        series.put(name, added);
+        for (String identity : added.identities)
+            identities.put(identity, name);
+        return true;
+    }
+
+    private synchronized void remove(String name) {
+        if (shadowed.remove(name) != null)
+            return;
+        Series removed = series.remove(name);
+        if (removed == null)
+            return;
+        for (String identity : removed.identities)
+            identities.remove(identity);
+        Family family = families.get(removed.name);
+        family.series.remove(name);
+        if (family.series.isEmpty())
+            families.remove(removed.name);
+
+        // Exposes the series that collided with the removed one
+        Iterator<Map.Entry<String, Series>> iterator = shadowed.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Series> entry = iterator.next();
+            if (expose(entry.getKey(), entry.getValue()))
+                iterator.remove();
+        }
+    }
+
+    // Encodes the name of the sample, with the given suffix, and the labels of the series followed by the value separator
+    private static byte[] sample(String family, String suffix, String labels) {
+        StringBuilder builder = new StringBuilder(family).append(suffix);
+        if (!labels.isEmpty())
+            builder.append('{').append(labels).append('}');
+        return builder.append(' ').toString().getBytes(TextBuffer.UTF_8);
+    }
+
+    private static String labels(Map<String, String> tags, String quantile) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> tag : tags.entrySet())
+            label(builder, sanitize(tag.getKey(), false), tag.getValue());
+        if (quantile != null)
+            label(builder, "quantile", quantile);
+        return builder.toString();
+    }
+
+    private static void label(StringBuilder builder, String name, String value) {
+        if (builder.length() > 0)
+            builder.append(',');
+        builder.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"')
+                builder.append('\\').append(c);
+            else if (c == '\n')
+                builder.append("\\n");
+            else
+                builder.append(c);
+        }
+        builder.append('"');
+    }
+
+    // Replaces the characters that are not valid in metric names, or in label names, with underscores
+    private static String sanitize(String name, boolean metric) {
+        StringBuilder builder = new StringBuilder(name.length() + 1);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c >= '0' && c <= '9' && i > 0 || c == ':' && metric)
+                builder.append(c);
+            else if (c >= '0' && c <= '9')
+                builder.append('_').append(c);
+            else
+                builder.append('_');
+        }
+        return builder.length() > 0 ? builder.toString() : "_";
+    }
+
+    private static TaggedName tagged(String name) {
+        try {
+            return TaggedName.of(name);
+        } catch (IllegalArgumentException cause) {
+            // Exposes the metrics whose name looks like a malformed tagged name as is
+            return TaggedName.of(name.replace('{', '_'));
+        }
+    }
+
+    private static final class Family {
+
+        private final String type;
+
+        private final byte[] header;
+
+        private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<>();
+
+        private Family(String name, String type) {
+            this.type = type;
+            header = ("# TYPE " + name + " " + type + "\n").getBytes(TextBuffer.UTF_8);
+        }
+
+        private void write(TextBuffer buffer) throws IOException {
+            if (series.isEmpty())
+                return;
+            buffer.write(header);
+            for (Series each : series.values())
+                each.write(buffer);
+        }
+    }
+
+    private abstract static class Series {
+
+        // The name and type of the family of the series
+        final String name;
+
+        final String type;
+
+        // The sample names and the labels that identify the series in the exposition, including the derived samples
+        final String[] identities;
+
+        Series(String name, String type, Map<String, String> tags, String... suffixes) {
+            this.name = name;
+            this.type = type;
+            String labels = "{" + labels(tags, null) + "}";
+            identities = new String[suffixes.length + 1];
+            identities[0] = name + labels;
+            for (int i = 0; i < suffixes.length; i++)
+                identities[i + 1] = name + suffixes[i] + labels;
+        }
+
+        abstract void write(TextBuffer buffer) throws IOException;
+    }
+
+    private static final class CounterSeries extends Series {
+
+        private final Counter counter;
+
+        private final byte[] sample;
+
+        private CounterSeries(TaggedName name, Counter counter) {
+            super(sanitize(name.getName(), true), "gauge", name.getTags());
+            this.counter = counter;
+            sample = sample(sanitize(name.getName(), true), "", labels(name.getTags(), null));
+        }
+
+        @Override
+        void write(TextBuffer buffer) throws IOException {
+            buffer.write(sample);
+            buffer.writeLong(counter.getCount());
+            buffer.write((byte) '\n');
+        }
+    }
+
+    private static final class GaugeSeries extends Series {
+
+        private final Gauge<?> gauge;
+
+        private final byte[] sample;
+
+        private GaugeSeries(TaggedName name, Gauge<?> gauge) {
+            super(sanitize(name.getName(), true), "gauge", name.getTags());
+            this.gauge = gauge;
+            sample = sample(sanitize(name.getName(), true), "", labels(name.getTags(), null));
+        }
+
+        @Override
+        void write(TextBuffer buffer) throws IOException {
+            Object value;
+            try {
+                value = gauge.getValue();
+            } catch (RuntimeException cause) {
+                // A failing gauge must not fail the whole scrape
+                return;
+            }
+            if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+                buffer.write(sample);
+                buffer.writeDouble(((Number) value).doubleValue());
+            } else if (value instanceof Number) {
+                buffer.write(sample);
+                buffer.writeLong(((Number) value).longValue());
+            } else if (value instanceof Boolean) {
+                buffer.write(sample);
+                buffer.write((byte) ((Boolean) value ? '1' : '0'));
+            } else {
+                // Only numeric and boolean values can be exposed
+                return;
+            }
+            buffer.write((byte) '\n');
+        }
+    }
+
+    private static final class MeterSeries extends Series {
+
+        private final Meter meter;
+
+        private final byte[] sample;
+
+        private MeterSeries(TaggedName name, Meter meter) {
+            super(sanitize(name.getName(), true) + "_total", "counter", name.getTags());
+            this.meter = meter;
+            sample = sample(sanitize(name.getName(), true), "_total", labels(name.getTags(), null));
+        }
+
+        @Override
+        void write(TextBuffer buffer) throws IOException {
+            buffer.write(sample);
+            buffer.writeLong(meter.getCount());
+            buffer.write((byte) '\n');
+        }
+    }
+
+    private static final class SummarySeries extends Series {
+
+        private final Sampling sampling;
+
+        // Whether the sampled values are durations in nanoseconds
+        private final boolean durations;
+
+        private final byte[][] quantiles = new byte[QUANTILES.length][];
+
+        private final byte[] count;
+
+        private SummarySeries(TaggedName name, Sampling sampling, boolean durations) {
+            super(sanitize(name.getName(), true), "summary", name.getTags(), "_count");
+            this.sampling = sampling;
+            this.durations = durations;
+            String family = sanitize(name.getName(), true);
+            for (int i = 0; i < QUANTILES.length; i++)
+                quantiles[i] = sample(family, "", labels(name.getTags(), String.valueOf(QUANTILES[i])));
+            count = sample(family, "_count", labels(name.getTags(), null));
+        }
+
+        @Override
+        void write(TextBuffer buffer) throws IOException {
+            Snapshot snapshot = sampling.getSnapshot();
+            for (int i = 0; i < QUANTILES.length; i++) {
+                buffer.write(quantiles[i]);
+                double value = snapshot.getValue(QUANTILES[i]);
+                if (durations)
+                    buffer.writeSeconds(Math.round(value));
+                else
+                    buffer.writeDouble(value);
+                buffer.write((byte) '\n');
+            }
+            buffer.write(count);
+            buffer.writeLong(sampling instanceof Timer ? ((Timer) sampling).getCount() : ((Histogram) sampling).getCount());
+            buffer.write((byte) '\n');
+        }
+    }
+
+    private final class Listener implements MetricRegistryListener {
+
+        @Override
+        public void onGaugeAdded(String name, Gauge<?> gauge) {
+            add(name, new GaugeSeries(tagged(name), gauge));
+        }
+
+        @Override
+        public void onGaugeRemoved(String name) {
+            remove(name);
+        }
+
+        @Override
+        public void onCounterAdded(String name, Counter counter) {
+            add(name, new CounterSeries(tagged(name), counter));
+        }
+
+        @Override
+        public void onCounterRemoved(String name) {
+            remove(name);
+        }
+
+        @Override
+        public void onHistogramAdded(String name, Histogram histogram) {
+            add(name, new SummarySeries(tagged(name), histogram, false));
+        }
+
+        @Override
+        public void onHistogramRemoved(String name) {
+            remove(name);
+        }
+
+        @Override
+        public void onMeterAdded(String name, Meter meter) {
+            add(name, new MeterSeries(tagged(name), meter));
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            remove(name);
+        }
+
+        @Override
+        public void onTimerAdded(String name, Timer timer) {
+            add(name, new SummarySeries(tagged(name), timer, true));
+        }
+
+        @Override
+        public void onTimerRemoved(String name) {
+            remove(name);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.MetricRegistry;
+
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Exposes the metrics of the {@link MetricRegistry} bean of the application in the Prometheus text exposition
+ * format, see {@link PrometheusExporter}. It must be mapped to the scraped path of the web application,
+ * e.g. {@code /metrics}, in a CDI-enabled servlet container.
+ */
+public class PrometheusServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Inject
+    private MetricRegistry registry;
+
+    private transient PrometheusExporter exporter;
+
+    @Override
+    public void init() throws ServletException {
+        if (registry == null)
+            throw new ServletException("No metric registry injected into servlet [" + getServletName() + "], make sure CDI is enabled");
+        exporter = new PrometheusExporter(registry);
+    }
+
+    @Override
+    public void destroy() {
+        if (exporter != null)
+            exporter.close();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(PrometheusExporter.CONTENT_TYPE);
+        exporter.write(response.getOutputStream());
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Sampling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Encodes the snapshots of the histograms and timers of a {@link MetricRegistry} as {@link BucketHistogram}s,
+ * so that they can be merged accurately across nodes, in a compact binary stream. The durations of the timers
+ * are encoded in nanoseconds. The weights of the values of weighted snapshots and the buckets of
+ * {@link io.astefanutti.metrics.cdi.BucketSnapshot}s are preserved, see {@link BucketHistogram#of(com.codahale.metrics.Snapshot, long, int)}.
+ *
+ * The stream starts with the {@value #VERSION} version byte, followed for each metric by a {@code 1} byte, the length
+ * of its UTF-8 encoded name as a variable-length integer, its name and its encoded histogram, and ends with a {@code 0} byte.
+ * The metrics are encoded one after the other while iterating over the registry, without copying its metrics.
+ */
+public final class SnapshotEncoder {
+
+    /**
+     * The version of the stream format.
+     */
+    public static final int VERSION = 1;
+
+    private static final int METRIC = 1;
+
+    private static final int END = 0;
+
+    private final MetricRegistry registry;
+
+    private final MetricFilter filter;
+
+    private final int precision;
+
+    /**
+     * @param registry  the metric registry whose histograms and timers are encoded
+     * @param filter    the filter of the encoded metrics
+     * @param precision the precision of the encoded histograms, see {@link BucketHistogram}
+     */
+    public SnapshotEncoder(MetricRegistry registry, MetricFilter filter, int precision) {
+        // Fails fast on invalid precisions
+        new BucketHistogram(precision);
+        this.registry = registry;
+        this.filter = filter;
+        this.precision = precision;
+    }
+
+    /**
+     * Encodes the current snapshots of the histograms and timers of the registry into the given output stream,
+     * that is neither buffered nor closed.
+     *
+     * @param output the output stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void encode(OutputStream output) throws IOException {
+        output.write(VERSION);
+        for (Map.Entry<String, Metric> metric : registry.getMetrics().entrySet()) {
+            if (!(metric.getValue() instanceof Sampling) || !(metric.getValue() instanceof Counting) || !filter.matches(metric.getKey(), metric.getValue()))
+                continue;
+            byte[] name = metric.getKey().getBytes(TextBuffer.UTF_8);
+            output.write(METRIC);
+            Varints.write(output, name.length);
+            output.write(name);
+            BucketHistogram.of(((Sampling) metric.getValue()).getSnapshot(), ((Counting) metric.getValue()).getCount(), precision).encode(output);
+        }
+        output.write(END);
+    }
+
+    /**
+     * Decodes a stream of encoded snapshots.
+     *
+     * @param input the input stream to read from
+     * @return the decoded histograms by metric name
+     * @throws IOException if an I/O error occurs or the stream is malformed
+     */
+    public static SortedMap<String, BucketHistogram> decode(InputStream input) throws IOException {
+        int version = input.read();
+        if (version != VERSION)
+            throw new IOException("Unsupported snapshot stream version [" + version + "]");
+
+        SortedMap<String, BucketHistogram> histograms = new TreeMap<>();
+        int marker;
+        while ((marker = input.read()) == METRIC) {
+            histograms.put(name(input), BucketHistogram.decode(input));
+        }
+        if (marker != END)
+            throw new IOException("Unexpected end of snapshot stream");
+        return histograms;
+    }
+
+    // Reads the name in chunks so that a malformed length cannot allocate more than the stream contains
+    private static String name(InputStream input) throws IOException {
+        long length = Varints.read(input);
+        if (length < 0L || length > Integer.MAX_VALUE - 8)
+            throw new IOException("Malformed metric name length [" + length + "]");
+
+        ByteArrayOutputStream name = new ByteArrayOutputStream((int) Math.min(length, 256L));
+        byte[] chunk = new byte[(int) Math.min(length, 4096L)];
+        long remaining = length;
+        while (remaining > 0L) {
+            int read = input.read(chunk, 0, (int) Math.min(remaining, chunk.length));
+            if (read < 0)
+                throw new IOException("Unexpected end of snapshot stream");
+            name.write(chunk, 0, read);
+            remaining -= read;
+        }
+        return new String(name.toByteArray(), TextBuffer.UTF_8);
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+// A reusable buffer that encodes the exposed text directly into bytes and hands them to the output stream
+// once full, so that encoding the samples does not allocate intermediate strings.
+/* package-private */ final class TextBuffer {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] NAN = "NaN".getBytes(UTF_8);
+
+    private static final byte[] POSITIVE_INFINITY = "+Inf".getBytes(UTF_8);
+
+    private static final byte[] NEGATIVE_INFINITY = "-Inf".getBytes(UTF_8);
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final byte[] bytes;
+
+    // The scratch space of the digits of a long value, written in reverse order
+    private final byte[] digits = new byte[20];
+
+    private int position;
+
+    private OutputStream output;
+
+    TextBuffer(int size) {
+        bytes = new byte[size];
+    }
+
+    void reset(OutputStream output) {
+        this.output = output;
+        position = 0;
+    }
+
+    void write(byte[] value) throws IOException {
+        if (value.length > bytes.length - position) {
+            flush();
+            // Values larger than the buffer are written through
+            if (value.length > bytes.length) {
+                output.write(value);
+                return;
+            }
+        }
+        System.arraycopy(value, 0, bytes, position, value.length);
+        position += value.length;
+    }
+
+    void write(byte value) throws IOException {
+        if (position == bytes.length)
+            flush();
+        bytes[position++] = value;
+    }
+
+    void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            write(Long.toString(value).getBytes(UTF_8));
+            return;
+        }
+        if (value < 0) {
+            write((byte) '-');
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (length > 0)
+            write(digits[--length]);
+    }
+
+    void writeDouble(double value) throws IOException {
+        if (Double.isNaN(value))
+            write(NAN);
+        else if (Double.isInfinite(value))
+            write(value > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY);
+        else if (value == (long) value)
+            writeLong((long) value);
+        else if (Math.abs(value) >= 1E-3 && Math.abs(value) < 1E6)
+            // The nine fractional digits are exact within that range
+            writeFixed(value);
+        else
+            write(Double.toString(value).getBytes(UTF_8));
+    }
+
+    // Writes a duration in nanoseconds as seconds without loss of precision
+    void writeSeconds(long nanos) throws IOException {
+        if (nanos < 0) {
+            write((byte) '-');
+            nanos = -nanos;
+        }
+        writeLong(nanos / NANOS_PER_SECOND);
+        writeFraction(nanos % NANOS_PER_SECOND);
+    }
+
+    void flush() throws IOException {
+        if (position > 0)
+            output.write(bytes, 0, position);
+        position = 0;
+    }
+
+    private void writeFixed(double value) throws IOException {
+        if (value < 0) {
+            write((byte) '-');
+            value = -value;
+        }
+        long integer = (long) value;
+        long fraction = Math.round((value - integer) * NANOS_PER_SECOND);
+        if (fraction == NANOS_PER_SECOND) {
+            integer++;
+            fraction = 0;
+        }
+        writeLong(integer);
+        writeFraction(fraction);
+    }
+
+    // Writes the nine fractional digits of the given value without the trailing zeros
+    private void writeFraction(long fraction) throws IOException {
+        if (fraction == 0)
+            return;
+        int length = 9;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            length--;
+        }
+        write((byte) '.');
+        for (int i = length - 1; i >= 0; i--) {
+            digits[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        for (int i = 0; i < length; i++)
+            write(digits[i]);
+    }
+}
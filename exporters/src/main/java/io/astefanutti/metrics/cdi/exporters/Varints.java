@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Variable-length encoding of longs, 7 bits per byte with the most significant bit set on all bytes but the last,
+// and zigzag encoding of the signed values so that small negative values are encoded in few bytes
+/* package-private */ final class Varints {
+
+    private Varints() {
+    }
+
+    static void write(OutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0L) {
+            output.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    static void writeSigned(OutputStream output, long value) throws IOException {
+        write(output, (value << 1) ^ (value >> 63));
+    }
+
+    static long read(InputStream input) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.read();
+            if (b < 0)
+                throw new EOFException("Unexpected end of varint");
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static long readSigned(InputStream input) throws IOException {
+        long value = read(input);
+        return (value >>> 1) ^ -(value & 1L);
+    }
+}
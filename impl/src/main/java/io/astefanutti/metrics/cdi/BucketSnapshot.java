@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+/**
+ * A snapshot whose recorded values are counted into buckets, so that its distribution can be read
+ * without expanding each recorded value, e.g. by exporters that need the frequency of each value.
+ *
+ * @see HdrHistogramReservoir
+ */
+public interface BucketSnapshot {
+
+    /**
+     * @return one representative value per non-empty bucket, in ascending order
+     */
+    long[] getValues();
+
+    /**
+     * @return the number of values recorded in each bucket, in the order of the values returned by {@link #getValues()}
+     */
+    long[] getCounts();
+
+    /**
+     * @return the number of recorded values, i.e. the sum of the counts returned by {@link #getCounts()}
+     */
+    long getTotalCount();
+}
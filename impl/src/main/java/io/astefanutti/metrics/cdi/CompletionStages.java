@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.inject.Vetoed;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Future;
+
+// Registers completion callbacks on the CompletionStage instances returned by asynchronous methods so that
+// the interceptors can update their metrics once the asynchronous computation completes.
+// The Java 8 types are looked up reflectively as Metrics CDI still runs on Java 7, on which no method is asynchronous.
+// The callbacks are created through a factory resolved once, a lambda metafactory call site or a proxy constructor,
+// so that no reflective lookup nor dispatch happens per asynchronous invocation.
+@Vetoed
+/* package-private */ final class CompletionStages {
+
+    private static final Class<?> COMPLETION_STAGE;
+
+    private static final Class<?> COMPLETION_EXCEPTION;
+
+    private static final Class<?> BI_CONSUMER;
+
+    private static final MethodHandle WHEN_COMPLETE;
+
+    // Creates the BiConsumer callback of a completion, (Completion) -> Object
+    private static final MethodHandle CALLBACK;
+
+    static {
+        Class<?> stage = null;
+        Class<?> exception = null;
+        Class<?> consumer = null;
+        MethodHandle whenComplete = null;
+        MethodHandle callback = null;
+        try {
+            stage = Class.forName("java.util.concurrent.CompletionStage");
+            exception = Class.forName("java.util.concurrent.CompletionException");
+            consumer = Class.forName("java.util.function.BiConsumer");
+            whenComplete = MethodHandles.publicLookup().findVirtual(stage, "whenComplete", MethodType.methodType(stage, consumer));
+            callback = lambda(consumer);
+            if (callback == null)
+                callback = proxy(consumer);
+            callback = callback.asType(MethodType.methodType(Object.class, Completion.class));
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException cause) {
+            stage = null;
+        }
+        COMPLETION_STAGE = stage;
+        COMPLETION_EXCEPTION = exception;
+        BI_CONSUMER = consumer;
+        WHEN_COMPLETE = whenComplete;
+        CALLBACK = callback;
+    }
+
+    private CompletionStages() {
+    }
+
+    interface Completion {
+
+        // The failure is null if the stage completed normally
+        void complete(Throwable failure);
+    }
+
+    // Whether the member may return a CompletionStage, e.g. a method declared to return a Future or an Object
+    static boolean isAsync(Member member) {
+        if (COMPLETION_STAGE == null || !(member instanceof Method))
+            return false;
+
+        Class<?> type = ((Method) member).getReturnType();
+        return COMPLETION_STAGE.isAssignableFrom(type) || type.isAssignableFrom(COMPLETION_STAGE) || Future.class.isAssignableFrom(type);
+    }
+
+    // Returns false if the result is not a CompletionStage, in which case the completion is not called
+    static boolean whenComplete(Object result, Completion completion) {
+        if (!COMPLETION_STAGE.isInstance(result))
+            return false;
+
+        try {
+            WHEN_COMPLETE.invoke(result, (Object) CALLBACK.invokeExact(completion));
+        } catch (RuntimeException cause) {
+            // The stage does not support completion callbacks
+            return false;
+        } catch (Error error) {
+            throw error;
+        } catch (Throwable cause) {
+            throw new IllegalStateException("Error while registering completion callback on [" + result + "]", cause);
+        }
+        return true;
+    }
+
+    // Spins a lambda class implementing BiConsumer that calls the accept method, or returns null if not supported
+    private static MethodHandle lambda(Class<?> consumer) {
+        try {
+            Class<?> factory = Class.forName("java.lang.invoke.LambdaMetafactory");
+            MethodHandle metafactory = MethodHandles.publicLookup().findStatic(factory, "metafactory", MethodType.methodType(CallSite.class, MethodHandles.Lookup.class, String.class, MethodType.class, MethodType.class, MethodHandle.class, MethodType.class));
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle accept = lookup.findStatic(CompletionStages.class, "accept", MethodType.methodType(void.class, Completion.class, Object.class, Throwable.class));
+            CallSite site = (CallSite) metafactory.invoke(lookup, "accept", MethodType.methodType(consumer, Completion.class), MethodType.methodType(void.class, Object.class, Object.class), accept, MethodType.methodType(void.class, Object.class, Throwable.class));
+            return site.getTarget();
+        } catch (Throwable cause) {
+            return null;
+        }
+    }
+
+    // Resolves the constructor of the proxy class once and binds it to the creation of the invocation handler
+    private static MethodHandle proxy(Class<?> consumer) throws NoSuchMethodException, IllegalAccessException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Class<?> proxy = Proxy.getProxyClass(CompletionStages.class.getClassLoader(), consumer);
+        MethodHandle constructor = lookup.findConstructor(proxy, MethodType.methodType(void.class, InvocationHandler.class));
+        MethodHandle handler = lookup.findConstructor(CompletionHandler.class, MethodType.methodType(void.class, Completion.class));
+        return MethodHandles.filterArguments(constructor, 0, handler.asType(MethodType.methodType(InvocationHandler.class, Completion.class)));
+    }
+
+    private static void accept(Completion completion, Object result, Throwable failure) {
+        completion.complete(unwrap(failure));
+    }
+
+    // Dependent stages complete with the failure wrapped into a CompletionException
+    private static Throwable unwrap(Throwable failure) {
+        if (COMPLETION_EXCEPTION.isInstance(failure) && failure.getCause() != null)
+            return failure.getCause();
+        return failure;
+    }
+
+    private static final class CompletionHandler implements InvocationHandler {
+
+        private final Completion completion;
+
+        CompletionHandler(Completion completion) {
+            this.completion = completion;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "accept":
+                    accept(completion, args[0], (Throwable) args[1]);
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CompletionHandler@" + Integer.toHexString(System.identityHashCode(proxy));
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        }
+    }
+}
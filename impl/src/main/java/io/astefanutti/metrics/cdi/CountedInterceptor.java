@@ -16,7 +16,6 @@
 package io.astefanutti.metrics.cdi;
 
 import com.codahale.metrics.Counter;
-import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.annotation.Counted;
 
 import javax.annotation.Priority;
@@ -34,14 +33,14 @@ import javax.interceptor.AroundTimeout;
 @Priority(Interceptor.Priority.LIBRARY_BEFORE + 10)
 /* package-private */ class CountedInterceptor {
 
-    private final MetricRegistry registry;
+    private final InvocationPlans plans;
 
-    private final MetricResolver resolver;
+    private final SelfMetrics self;
 
     @Inject
-    private CountedInterceptor(MetricRegistry registry, MetricResolver resolver) {
-        this.registry = registry;
-        this.resolver = resolver;
+    private CountedInterceptor(InvocationPlans plans, MetricsExtension extension) {
+        this.plans = plans;
+        this.self = extension.getSelfMetrics();
     }
 
     @AroundConstruct
@@ -60,16 +59,39 @@ import javax.interceptor.AroundTimeout;
     }
 
     private <E extends Member & AnnotatedElement> Object countedCallable(InvocationContext context, E element) throws Exception {
-        MetricResolver.Of<Counted> counted = resolver.counted(element);
-        Counter counter = (Counter) registry.getMetrics().get(counted.metricName());
-        if (counter == null)
-            throw new IllegalStateException("No counter with name [" + counted.metricName() + "] found in registry [" + registry + "]");
+        if (!self.isEnabled())
+            return count(context, element, null);
 
+        SelfMetrics.Overhead overhead = self.overhead();
+        long saved = overhead.begin();
+        long start = System.nanoTime();
+        try {
+            return count(context, element, overhead);
+        } finally {
+            overhead.end(self.counted, start, saved);
+        }
+    }
+
+    private <E extends Member & AnnotatedElement> Object count(InvocationContext context, E element, SelfMetrics.Overhead overhead) throws Exception {
+        final InvocationPlans.CountedPlan counted = plans.counted(element);
+        if (!counted.enabled)
+            return SelfMetrics.proceed(context, overhead);
+
+        final Counter counter = counted.metric(context);
         counter.inc();
+        boolean async = false;
         try {
-            return context.proceed();
+            Object result = SelfMetrics.proceed(context, overhead);
+            // The counter is decremented once the returned stage completes for asynchronous methods
+            async = counted.async && !counted.monotonic && CompletionStages.whenComplete(result, new CompletionStages.Completion() {
+                @Override
+                public void complete(Throwable failure) {
+                    counter.dec();
+                }
+            });
+            return result;
         } finally {
-            if (!counted.metricAnnotation().monotonic())
+            if (!counted.monotonic && !async)
                 counter.dec();
         }
     }
@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Timer;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScheduledReporter} that only reports the metrics that have changed since the previous report, so that
+ * reporting large registries of mostly idle metrics does not serialize and send the same values over and over.
+ *
+ * The counters, histograms, meters and timers have changed when their count has changed, and the gauges when
+ * their value is not equal to their previous value. The gauges are read once per report and passed to
+ * {@link #report(SortedMap, SortedMap, SortedMap, SortedMap, SortedMap)} as gauges returning the read value.
+ * Every {@code fullReportCycles} reports, starting with the first one, all the metrics are reported.
+ *
+ * The reporter tracks the metrics registered and removed with a registry listener, instead of retrieving
+ * the metrics from the registry for each report. The filter is applied once when a metric gets registered.
+ */
+public abstract class DeltaScheduledReporter extends ScheduledReporter {
+
+    private final MetricRegistry registry;
+
+    private final MetricFilter filter;
+
+    private final int fullReportCycles;
+
+    private final MetricRegistryListener listener = new Listener();
+
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+
+    // Guarded by this
+    private long cycle;
+
+    /**
+     * @param registry         the registry whose metrics are reported
+     * @param name             the reporter name
+     * @param filter           the filter of the reported metrics
+     * @param rateUnit         the unit the rates are converted to
+     * @param durationUnit     the unit the durations are converted to
+     * @param fullReportCycles the number of reports between two reports of all the metrics
+     * @throws IllegalArgumentException if {@code fullReportCycles} is not positive
+     */
+    protected DeltaScheduledReporter(MetricRegistry registry, String name, MetricFilter filter, TimeUnit rateUnit, TimeUnit durationUnit, int fullReportCycles) {
+        super(registry, name, filter, rateUnit, durationUnit);
+        this.registry = registry;
+        this.filter = filter;
+        this.fullReportCycles = checkFullReportCycles(fullReportCycles);
+        registry.addListener(listener);
+    }
+
+    /**
+     * @param registry         the registry whose metrics are reported
+     * @param name             the reporter name
+     * @param filter           the filter of the reported metrics
+     * @param rateUnit         the unit the rates are converted to
+     * @param durationUnit     the unit the durations are converted to
+     * @param executor         the executor scheduling the reports
+     * @param fullReportCycles the number of reports between two reports of all the metrics
+     * @throws IllegalArgumentException if {@code fullReportCycles} is not positive
+     */
+    protected DeltaScheduledReporter(MetricRegistry registry, String name, MetricFilter filter, TimeUnit rateUnit, TimeUnit durationUnit, ScheduledExecutorService executor, int fullReportCycles) {
+        super(registry, name, filter, rateUnit, durationUnit, executor);
+        this.registry = registry;
+        this.filter = filter;
+        this.fullReportCycles = checkFullReportCycles(fullReportCycles);
+        registry.addListener(listener);
+    }
+
+    /**
+     * Reports the metrics that have changed since the previous report, or all the metrics every {@code fullReportCycles} reports.
+     */
+    @Override
+    public void report() {
+        synchronized (this) {
+            boolean full = cycle++ % fullReportCycles == 0;
+            SortedMap<String, Gauge> gauges = new TreeMap<>();
+            SortedMap<String, Counter> counters = new TreeMap<>();
+            SortedMap<String, Histogram> histograms = new TreeMap<>();
+            SortedMap<String, Meter> meters = new TreeMap<>();
+            SortedMap<String, Timer> timers = new TreeMap<>();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Metric metric = entry.getValue().changed(full);
+                if (metric == null)
+                    continue;
+                if (metric instanceof Gauge)
+                    gauges.put(entry.getKey(), (Gauge) metric);
+                else if (metric instanceof Counter)
+                    counters.put(entry.getKey(), (Counter) metric);
+                else if (metric instanceof Histogram)
+                    histograms.put(entry.getKey(), (Histogram) metric);
+                else if (metric instanceof Meter)
+                    meters.put(entry.getKey(), (Meter) metric);
+                else if (metric instanceof Timer)
+                    timers.put(entry.getKey(), (Timer) metric);
+            }
+            report(gauges, counters, histograms, meters, timers);
+        }
+    }
+
+    /**
+     * Stops the reporter and the tracking of the metrics of the registry.
+     */
+    @Override
+    public void stop() {
+        registry.removeListener(listener);
+        entries.clear();
+        super.stop();
+    }
+
+    private static int checkFullReportCycles(int fullReportCycles) {
+        if (fullReportCycles < 1)
+            throw new IllegalArgumentException("Number of cycles between full reports must be positive!");
+        return fullReportCycles;
+    }
+
+    private void add(String name, Metric metric) {
+        if (filter.matches(name, metric))
+            entries.put(name, metric instanceof Gauge ? new GaugeEntry((Gauge<?>) metric) : new CountingEntry(metric));
+    }
+
+    // The state of a metric as of the previous report, only accessed while reporting
+    private abstract static class Entry {
+
+        // Returns the metric to report if it has changed or the report is full, null otherwise
+        abstract Metric changed(boolean full);
+    }
+
+    private static final class CountingEntry extends Entry {
+
+        private final Metric metric;
+
+        private long count = Long.MIN_VALUE;
+
+        private CountingEntry(Metric metric) {
+            this.metric = metric;
+        }
+
+        @Override
+        Metric changed(boolean full) {
+            long current = ((Counting) metric).getCount();
+            boolean changed = current != count;
+            count = current;
+            return changed || full ? metric : null;
+        }
+    }
+
+    private static final class GaugeEntry extends Entry {
+
+        private static final Object UNSET = new Object();
+
+        private final Gauge<?> gauge;
+
+        private Object value = UNSET;
+
+        private GaugeEntry(Gauge<?> gauge) {
+            this.gauge = gauge;
+        }
+
+        @Override
+        Metric changed(boolean full) {
+            final Object current;
+            try {
+                current = gauge.getValue();
+            } catch (RuntimeException cause) {
+                // Let the reporter handle the failing gauge
+                value = UNSET;
+                return gauge;
+            }
+            boolean changed = current == null ? value != null : !current.equals(value);
+            value = current;
+            if (!changed && !full)
+                return null;
+            return new Gauge<Object>() {
+                @Override
+                public Object getValue() {
+                    return current;
+                }
+            };
+        }
+    }
+
+    private final class Listener implements MetricRegistryListener {
+
+        @Override
+        public void onGaugeAdded(String name, Gauge<?> gauge) {
+            add(name, gauge);
+        }
+
+        @Override
+        public void onGaugeRemoved(String name) {
+            entries.remove(name);
+        }
+
+        @Override
+        public void onCounterAdded(String name, Counter counter) {
+            add(name, counter);
+        }
+
+        @Override
+        public void onCounterRemoved(String name) {
+            entries.remove(name);
+        }
+
+        @Override
+        public void onHistogramAdded(String name, Histogram histogram) {
+            add(name, histogram);
+        }
+
+        @Override
+        public void onHistogramRemoved(String name) {
+            entries.remove(name);
+        }
+
+        @Override
+        public void onMeterAdded(String name, Meter meter) {
+            add(name, meter);
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            entries.remove(name);
+        }
+
+        @Override
+        public void onTimerAdded(String name, Timer timer) {
+            add(name, timer);
+        }
+
+        @Override
+        public void onTimerRemoved(String name) {
+            entries.remove(name);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Member;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Guards the registry against the metrics whose name is resolved at runtime, i.e. names with expressions.
+// The number of metrics registered for each declaration, i.e. annotated member or injection point, is bounded,
+// the registrations beyond the limit being counted by the rejected counter and recorded into metrics that are
+// not registered. When an idle timeout is configured, the tracked metrics that have neither been looked up by the
+// interceptors nor had their count changed within that timeout are removed from the registry, so that they get
+// registered again on their next use. The lookups are tracked as the count of non-monotonic counters goes back
+// to the same value after each invocation.
+@ApplicationScoped
+/* package-private */ class DynamicMetrics {
+
+    static final String REJECTED = "io.astefanutti.metrics.cdi.rejected";
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private MetricsExtension extension;
+
+    @Inject
+    private MetricsScheduler scheduler;
+
+    @Inject
+    private Reservoirs reservoirs;
+
+    private final ConcurrentMap<Object, Declaration> declarations = new ConcurrentHashMap<>();
+
+    // The declarations by admitted metric name
+    private final ConcurrentMap<String, Declaration> owners = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Activity> activities = new ConcurrentHashMap<>();
+
+    private final MetricRegistryListener listener = new Removal();
+
+    private ScheduledFuture<?> eviction;
+
+    @PostConstruct
+    private void scheduleEviction() {
+        registry.addListener(listener);
+        long timeout = extension.getDynamicMetricsIdleTimeout();
+        if (timeout > 0L)
+            eviction = scheduler.scheduleWithFixedDelay(new Eviction(timeout), timeout, Math.max(timeout / 2L, 1L), TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    private void cancelEviction() {
+        registry.removeListener(listener);
+        if (eviction != null)
+            eviction.cancel(false);
+    }
+
+    // The key of the declaration of the metrics with the given annotation type on the given member.
+    // Injection points are declarations as well, whose metrics are not evicted as the beans keep referencing them.
+    static Object declaration(Member element, Class<? extends Annotation> type) {
+        return new MemberDeclaration(element, type);
+    }
+
+    Counter counter(Object declaration, String name) {
+        Declaration guard = declaration(declaration);
+        if (guard.admit(name))
+            return track(name, registry.counter(name), guard);
+
+        rejected();
+        return guard.detached(Counter.class);
+    }
+
+    Meter meter(Object declaration, String name) {
+        Declaration guard = declaration(declaration);
+        if (guard.admit(name))
+            return track(name, registry.meter(name), guard);
+
+        rejected();
+        return guard.detached(Meter.class);
+    }
+
+    Histogram histogram(Object declaration, String name, Class<? extends Reservoir> reservoir) {
+        Declaration guard = declaration(declaration);
+        if (guard.admit(name))
+            return track(name, reservoirs.histogram(name, reservoir), guard);
+
+        rejected();
+        return guard.detached(Histogram.class);
+    }
+
+    Timer timer(Object declaration, String name, Class<? extends Reservoir> reservoir) {
+        Declaration guard = declaration(declaration);
+        if (guard.admit(name))
+            return track(name, reservoirs.timer(name, reservoir), guard);
+
+        rejected();
+        return guard.detached(Timer.class);
+    }
+
+    Timer timer(Object declaration, String name, Member element) {
+        Declaration guard = declaration(declaration);
+        if (guard.admit(name))
+            return track(name, reservoirs.timer(name, element), guard);
+
+        rejected();
+        return guard.detached(Timer.class);
+    }
+
+    // Tracks a metric registered with a bounded name elsewhere for idle eviction, each call marking it as used
+    <M extends Metric> M track(String name, M metric) {
+        if (eviction != null) {
+            Activity activity = activities.get(name);
+            if (activity == null)
+                activities.putIfAbsent(name, new Activity(metric));
+            else
+                activity.use();
+        }
+        return metric;
+    }
+
+    // The activity of a tracked metric, for the callers that cache the metric instead of looking it up, or null
+    Activity activity(String name) {
+        return eviction != null ? activities.get(name) : null;
+    }
+
+    private <M extends Metric> M track(String name, M metric, Declaration declaration) {
+        if (!owners.containsKey(name))
+            owners.putIfAbsent(name, declaration);
+        return declaration.evictable ? track(name, metric) : metric;
+    }
+
+    private Declaration declaration(Object key) {
+        Declaration declaration = declarations.get(key);
+        if (declaration == null) {
+            declaration = new Declaration(extension.getMaxDynamicMetrics(), key instanceof MemberDeclaration);
+            Declaration previous = declarations.putIfAbsent(key, declaration);
+            if (previous != null)
+                declaration = previous;
+        }
+        return declaration;
+    }
+
+    private void rejected() {
+        registry.counter(REJECTED).inc();
+    }
+
+    private void removed(String name) {
+        activities.remove(name);
+        Declaration declaration = owners.remove(name);
+        if (declaration != null)
+            declaration.names.remove(name);
+    }
+
+    private static final class Declaration {
+
+        private final Set<String> names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        private final int max;
+
+        private final boolean evictable;
+
+        private volatile Metric detached;
+
+        private Declaration(int max, boolean evictable) {
+            this.max = max;
+            this.evictable = evictable;
+        }
+
+        boolean admit(String name) {
+            if (names.contains(name))
+                return true;
+
+            synchronized (this) {
+                if (names.size() >= max)
+                    return false;
+                names.add(name);
+                return true;
+            }
+        }
+
+        // The rejected registrations of a declaration are all recorded into the same metric that is not registered
+        <M extends Metric> M detached(Class<M> type) {
+            Metric metric = detached;
+            if (metric == null) {
+                synchronized (this) {
+                    if (detached == null)
+                        detached = create(type);
+                    metric = detached;
+                }
+            }
+            return type.cast(metric);
+        }
+
+        private static Metric create(Class<?> type) {
+            if (Counter.class.equals(type))
+                return new Counter();
+            else if (Meter.class.equals(type))
+                return new Meter();
+            else if (Histogram.class.equals(type))
+                return new Histogram(new ExponentiallyDecayingReservoir());
+            else
+                return new Timer();
+        }
+    }
+
+    static final class Activity {
+
+        private final Metric metric;
+
+        // Set on each use and cleared by the eviction task, only written when not set to avoid contention
+        private volatile boolean used;
+
+        // Only accessed by the eviction task
+        private long count = -1L;
+
+        private long since;
+
+        private Activity(Metric metric) {
+            this.metric = metric;
+        }
+
+        void use() {
+            if (!used)
+                used = true;
+        }
+    }
+
+    private static final class MemberDeclaration {
+
+        private final Member element;
+
+        private final Class<? extends Annotation> type;
+
+        private MemberDeclaration(Member element, Class<? extends Annotation> type) {
+            this.element = element;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof MemberDeclaration))
+                return false;
+            MemberDeclaration other = (MemberDeclaration) object;
+            return element.equals(other.element) && type.equals(other.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * element.hashCode() + type.hashCode();
+        }
+    }
+
+    private final class Eviction implements Runnable {
+
+        private final long timeout;
+
+        private Eviction(long timeout) {
+            this.timeout = timeout;
+        }
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            for (Map.Entry<String, Activity> entry : activities.entrySet()) {
+                Activity activity = entry.getValue();
+                if (!(activity.metric instanceof Counting))
+                    continue;
+                long count = ((Counting) activity.metric).getCount();
+                if (activity.used || count != activity.count) {
+                    activity.used = false;
+                    activity.count = count;
+                    activity.since = now;
+                } else if (now - activity.since >= timeout && registry.getMetrics().get(entry.getKey()) == activity.metric) {
+                    registry.remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    private final class Removal extends MetricRegistryListener.Base {
+
+        @Override
+        public void onCounterRemoved(String name) {
+            removed(name);
+        }
+
+        @Override
+        public void onHistogramRemoved(String name) {
+            removed(name);
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            removed(name);
+        }
+
+        @Override
+        public void onTimerRemoved(String name) {
+            removed(name);
+        }
+    }
+}
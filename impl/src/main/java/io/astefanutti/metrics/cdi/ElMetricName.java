@@ -29,7 +29,11 @@ import javax.el.ValueExpression;
 import javax.el.VariableMapper;
 import javax.enterprise.inject.Vetoed;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -38,11 +42,35 @@ import java.util.regex.Pattern;
 
     private static final Pattern PATTERN = Pattern.compile("[#|$]\\{(.*)\\}");
 
+    private static final FunctionMapper FUNCTION_MAPPER = new FunctionMapper() {
+        @Override
+        public Method resolveFunction(String prefix, String localName) {
+            return null;
+        }
+    };
+
+    private static final VariableMapper VARIABLE_MAPPER = new VariableMapper() {
+        @Override
+        public ValueExpression resolveVariable(String variable) {
+            return null;
+        }
+
+        @Override
+        public ValueExpression setVariable(String variable, ValueExpression expression) {
+            return null;
+        }
+    };
+
     private final ELResolver elResolver;
 
     private final ExpressionFactory expressionFactory;
 
-    ElMetricName(ELResolver resolver, ExpressionFactory expressionFactory, Set<MetricsParameter> parameters) {
+    private final SelfMetrics self;
+
+    // Each distinct attribute gets parsed once into its literal and expression segments
+    private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<>();
+
+    ElMetricName(ELResolver resolver, ExpressionFactory expressionFactory, Set<MetricsParameter> parameters, SelfMetrics self) {
         super(parameters);
         CompositeELResolver composite = new CompositeELResolver();
         composite.add(resolver);
@@ -53,66 +81,100 @@ import java.util.regex.Pattern;
         composite.add(new BeanELResolver(true));
         this.elResolver = composite;
         this.expressionFactory = expressionFactory;
+        this.self = self;
     }
 
     @Override
     public String of(String attribute) {
-        Matcher matcher = PATTERN.matcher(attribute);
+        Template template = template(attribute);
         // Avoid creating objects if no expressions are found
-        if (!matcher.find())
+        if (template.isLiteral())
             return super.of(attribute);
-        else
-            return evaluateCompositeExpression(matcher);
-    }
 
-    private String evaluateCompositeExpression(Matcher matcher) {
-        StringBuffer buffer = new StringBuffer();
-        do {
-            String result = evaluateExpression(matcher.group());
-            matcher.appendReplacement(buffer, result != null ? result : "");
-        } while (matcher.find());
-
-        matcher.appendTail(buffer);
-        return buffer.toString();
+        long start = self.start();
+        String name = template.evaluate(createELContext());
+        self.stop(self.evaluations, start);
+        return name;
     }
 
-    private String evaluateExpression(String name) {
-        ELContext context = createELContext(elResolver, new FunctionMapper() {
-            @Override
-            public Method resolveFunction(String prefix, String localName) {
-                return null;
-            }
-        }, new VariableMapper() {
-            @Override
-            public ValueExpression resolveVariable(String variable) {
-                return null;
-            }
+    @Override
+    public boolean isStatic(String attribute) {
+        return template(attribute).isLiteral();
+    }
 
-            @Override
-            public ValueExpression setVariable(String variable, ValueExpression expression) {
-                return null;
-            }
-        });
-        return (String) expressionFactory.createValueExpression(context, name, String.class).getValue(context);
+    private Template template(String attribute) {
+        Template template = templates.get(attribute);
+        if (template == null) {
+            template = compile(attribute);
+            Template previous = templates.putIfAbsent(attribute, template);
+            if (previous != null)
+                template = previous;
+        }
+        return template;
     }
 
-    private ELContext createELContext(final ELResolver resolver, final FunctionMapper functionMapper, final VariableMapper variableMapper) {
+    private Template compile(String attribute) {
+        Matcher matcher = PATTERN.matcher(attribute);
+        List<String> literals = new ArrayList<>();
+        List<ValueExpression> expressions = new ArrayList<>();
+        ELContext context = createELContext();
+        int position = 0;
+        while (matcher.find()) {
+            literals.add(attribute.substring(position, matcher.start()));
+            expressions.add(expressionFactory.createValueExpression(context, matcher.group(), String.class));
+            position = matcher.end();
+        }
+        literals.add(attribute.substring(position));
+        return new Template(literals.toArray(new String[literals.size()]), expressions.toArray(new ValueExpression[expressions.size()]));
+    }
 
+    // The EL context holds per-evaluation state, like the property resolved flag, so that
+    // it cannot be shared across threads. It is cheap to create though as it shares the
+    // resolver and the mappers.
+    private ELContext createELContext() {
         return new ELContext() {
             @Override
             public ELResolver getELResolver() {
-                return resolver;
+                return elResolver;
             }
 
             @Override
             public FunctionMapper getFunctionMapper() {
-                return functionMapper;
+                return FUNCTION_MAPPER;
             }
 
             @Override
             public VariableMapper getVariableMapper() {
-                return variableMapper;
+                return VARIABLE_MAPPER;
             }
         };
     }
+
+    private static final class Template {
+
+        // Literal segments surrounding the expressions, there is always one more literal than expressions
+        private final String[] literals;
+
+        private final ValueExpression[] expressions;
+
+        private Template(String[] literals, ValueExpression[] expressions) {
+            this.literals = literals;
+            this.expressions = expressions;
+        }
+
+        private boolean isLiteral() {
+            return expressions.length == 0;
+        }
+
+        private String evaluate(ELContext context) {
+            StringBuilder builder = new StringBuilder(literals[0]);
+            for (int i = 0; i < expressions.length; i++) {
+                Object result = expressions[i].getValue(context);
+                if (result != null)
+                    builder.append(result);
+                builder.append(literals[i + 1]);
+            }
+            return builder.toString();
+        }
+    }
 }
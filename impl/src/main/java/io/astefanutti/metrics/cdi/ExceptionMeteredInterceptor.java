@@ -16,7 +16,6 @@
 package io.astefanutti.metrics.cdi;
 
 import com.codahale.metrics.Meter;
-import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.annotation.ExceptionMetered;
 
 import javax.annotation.Priority;
@@ -33,14 +32,14 @@ import java.lang.reflect.Member;
 @Priority(Interceptor.Priority.LIBRARY_BEFORE + 10)
 /* package-private */ class ExceptionMeteredInterceptor {
 
-    private final MetricRegistry registry;
+    private final InvocationPlans plans;
 
-    private final MetricResolver resolver;
+    private final SelfMetrics self;
 
     @Inject
-    private ExceptionMeteredInterceptor(MetricRegistry registry, MetricResolver resolver) {
-        this.registry = registry;
-        this.resolver = resolver;
+    private ExceptionMeteredInterceptor(InvocationPlans plans, MetricsExtension extension) {
+        this.plans = plans;
+        this.self = extension.getSelfMetrics();
     }
 
     @AroundConstruct
@@ -54,18 +53,43 @@ import java.lang.reflect.Member;
     }
 
     private <E extends Member & AnnotatedElement> Object meteredCallable(InvocationContext context, E element) throws Throwable {
-        MetricResolver.Of<ExceptionMetered> exceptionMetered = resolver.exceptionMetered(element);
-        Meter meter = (Meter) registry.getMetrics().get(exceptionMetered.metricName());
-        if (meter == null)
-            throw new IllegalStateException("No meter with name [" + exceptionMetered.metricName() + "] found in registry [" + registry + "]");
+        if (!self.isEnabled())
+            return meter(context, element, null);
 
+        SelfMetrics.Overhead overhead = self.overhead();
+        long saved = overhead.begin();
+        long start = System.nanoTime();
         try {
-            return context.proceed();
+            return meter(context, element, overhead);
+        } finally {
+            overhead.end(self.exceptionMetered, start, saved);
+        }
+    }
+
+    private <E extends Member & AnnotatedElement> Object meter(InvocationContext context, E element, SelfMetrics.Overhead overhead) throws Throwable {
+        final InvocationPlans.ExceptionMeteredPlan exceptionMetered = plans.exceptionMetered(element);
+        if (!exceptionMetered.enabled)
+            return SelfMetrics.proceed(context, overhead);
+
+        final Meter meter = exceptionMetered.metric(context);
+        Object result;
+        try {
+            result = SelfMetrics.proceed(context, overhead);
         } catch (Throwable throwable) {
-            if (exceptionMetered.metricAnnotation().cause().isInstance(throwable))
+            if (exceptionMetered.cause.isInstance(throwable))
                 meter.mark();
 
             throw throwable;
         }
+        // The meter is marked if the returned stage completes exceptionally for asynchronous methods
+        if (exceptionMetered.async)
+            CompletionStages.whenComplete(result, new CompletionStages.Completion() {
+                @Override
+                public void complete(Throwable failure) {
+                    if (exceptionMetered.cause.isInstance(failure))
+                        meter.mark();
+                }
+            });
+        return result;
     }
 }
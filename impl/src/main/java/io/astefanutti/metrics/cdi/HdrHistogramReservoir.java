@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+import javax.enterprise.inject.Vetoed;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reservoir backed by an <a href="http://hdrhistogram.org/">HdrHistogram</a> recorder, that records values without
+ * locking nor allocating, and whose snapshots contain the values recorded during a sliding time window, one minute
+ * by default, with two significant digits of precision. Only non-negative values can be recorded.
+ *
+ * The window is divided into {@value #CHUNKS} chunks that are discarded as the window slides, and the values recorded
+ * since the previous snapshot are attributed to the chunk of the current snapshot.
+ *
+ * The snapshots are {@link BucketSnapshot}s whose {@link Snapshot#getValues()} method returns one representative value
+ * per non-empty bucket, bounded by the histogram precision, instead of each recorded value, so does {@link Snapshot#size()},
+ * while {@link BucketSnapshot#getTotalCount()} returns the number of recorded values.
+ *
+ * The HdrHistogram library must be available on the application classpath to use that reservoir.
+ *
+ * @see MetricsConfiguration#reservoir(Class)
+ * @see MetricReservoir
+ */
+@Vetoed
+public final class HdrHistogramReservoir implements Reservoir {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private static final int CHUNKS = 6;
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+
+    private final Clock clock;
+
+    // The duration of a chunk in nanoseconds
+    private final long chunk;
+
+    // Guarded by this
+    private final Histogram[] chunks = new Histogram[CHUNKS];
+
+    // Guarded by this, the tick of each chunk
+    private final long[] ticks = new long[CHUNKS];
+
+    // Guarded by this, recycled by the recorder to avoid allocating a new interval histogram for each snapshot
+    private Histogram interval;
+
+    public HdrHistogramReservoir() {
+        this(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @param window     the duration of the window
+     * @param windowUnit the unit of {@code window}
+     */
+    public HdrHistogramReservoir(long window, TimeUnit windowUnit) {
+        this(window, windowUnit, Clock.defaultClock());
+    }
+
+    /**
+     * @param window     the duration of the window
+     * @param windowUnit the unit of {@code window}
+     * @param clock      the clock used to slide the window
+     */
+    public HdrHistogramReservoir(long window, TimeUnit windowUnit, Clock clock) {
+        this.clock = clock;
+        this.chunk = Math.max(1L, windowUnit.toNanos(window) / CHUNKS);
+        for (int i = 0; i < CHUNKS; i++) {
+            chunks[i] = new Histogram(SIGNIFICANT_DIGITS);
+            ticks[i] = Long.MIN_VALUE;
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (this) {
+            long tick = slide();
+            long count = 0L;
+            for (int i = 0; i < CHUNKS; i++)
+                if (isInWindow(i, tick))
+                    count += chunks[i].getTotalCount();
+            return (int) Math.min(count, Integer.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public void update(long value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Negative value [" + value + "] cannot be recorded by an HdrHistogram reservoir");
+
+        recorder.recordValue(value);
+    }
+
+    // Snapshots swap the recorder histograms and add the chunks of the window
+    @Override
+    public Snapshot getSnapshot() {
+        synchronized (this) {
+            long tick = slide();
+            Histogram window = new Histogram(SIGNIFICANT_DIGITS);
+            for (int i = 0; i < CHUNKS; i++)
+                if (isInWindow(i, tick))
+                    window.add(chunks[i]);
+            return new HdrHistogramSnapshot(window);
+        }
+    }
+
+    // Resets the chunk of the current tick if it has been left by the window and adds the interval histogram to it
+    private long slide() {
+        long tick = clock.getTick() / chunk;
+        int index = (int) (((tick % CHUNKS) + CHUNKS) % CHUNKS);
+        if (ticks[index] != tick) {
+            chunks[index].reset();
+            ticks[index] = tick;
+        }
+        interval = recorder.getIntervalHistogram(interval);
+        chunks[index].add(interval);
+        return tick;
+    }
+
+    private boolean isInWindow(int index, long tick) {
+        return ticks[index] != Long.MIN_VALUE && tick - ticks[index] < CHUNKS;
+    }
+
+    private static final class HdrHistogramSnapshot extends Snapshot implements BucketSnapshot {
+
+        private final Histogram histogram;
+
+        // Lazily computed on the first call to getValues or getCounts
+        private long[] values;
+
+        private long[] counts;
+
+        private HdrHistogramSnapshot(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile))
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+
+            return histogram.getValueAtPercentile(quantile * 100.0);
+        }
+
+        @Override
+        public long[] getValues() {
+            buckets();
+            return values.clone();
+        }
+
+        @Override
+        public long[] getCounts() {
+            buckets();
+            return counts.clone();
+        }
+
+        private synchronized void buckets() {
+            if (values != null)
+                return;
+
+            int buckets = 0;
+            for (HistogramIterationValue ignored : histogram.recordedValues())
+                buckets++;
+
+            long[] values = new long[buckets];
+            long[] counts = new long[buckets];
+            int i = 0;
+            for (HistogramIterationValue value : histogram.recordedValues()) {
+                values[i] = value.getValueIteratedTo();
+                counts[i++] = value.getCountAtValueIteratedTo();
+            }
+            this.counts = counts;
+            this.values = values;
+        }
+
+        @Override
+        public long getTotalCount() {
+            return histogram.getTotalCount();
+        }
+
+        // Consistent with the values that are one per bucket
+        @Override
+        public int size() {
+            buckets();
+            return values.length;
+        }
+
+        @Override
+        public long getMax() {
+            return histogram.getMaxValue();
+        }
+
+        @Override
+        public double getMean() {
+            return histogram.getMean();
+        }
+
+        @Override
+        public long getMin() {
+            return histogram.getMinValue();
+        }
+
+        @Override
+        public double getStdDev() {
+            return histogram.getStdDeviation();
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                for (HistogramIterationValue value : histogram.recordedValues())
+                    for (long count = 0; count < value.getCountAtValueIteratedTo(); count++)
+                        out.printf("%d%n", value.getValueIteratedTo());
+            }
+        }
+    }
+}
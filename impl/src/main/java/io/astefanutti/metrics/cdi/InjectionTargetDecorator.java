@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.InjectionPoint;
+import javax.enterprise.inject.spi.InjectionTarget;
+import java.util.Set;
+
+// Removes the destroyed bean instances from the gauges referencing them weakly.
+// That is not implemented as a @PreDestroy interceptor method as lifecycle callback interceptors
+// make the container subclass the bean classes, which breaks the gauge annotations with enum attributes in Weld.
+/* package-private */ final class InjectionTargetDecorator<T> implements InjectionTarget<T> {
+
+    private final InjectionTarget<T> decoratedTarget;
+
+    private final Class<T> beanClass;
+
+    private final MetricsExtension extension;
+
+    InjectionTargetDecorator(InjectionTarget<T> decoratedTarget, Class<T> beanClass, MetricsExtension extension) {
+        this.decoratedTarget = decoratedTarget;
+        this.beanClass = beanClass;
+        this.extension = extension;
+    }
+
+    @Override
+    public void inject(T instance, CreationalContext<T> ctx) {
+        decoratedTarget.inject(instance, ctx);
+    }
+
+    @Override
+    public void postConstruct(T instance) {
+        decoratedTarget.postConstruct(instance);
+    }
+
+    @Override
+    public void preDestroy(T instance) {
+        try {
+            decoratedTarget.preDestroy(instance);
+        } finally {
+            if (extension.getParameters().contains(MetricsParameter.weakGaugeTargets))
+                extension.getWeakGauges().remove(beanClass, instance);
+        }
+    }
+
+    @Override
+    public T produce(CreationalContext<T> ctx) {
+        return decoratedTarget.produce(ctx);
+    }
+
+    @Override
+    public void dispose(T instance) {
+        decoratedTarget.dispose(instance);
+    }
+
+    @Override
+    public Set<InjectionPoint> getInjectionPoints() {
+        return decoratedTarget.getInjectionPoints();
+    }
+}
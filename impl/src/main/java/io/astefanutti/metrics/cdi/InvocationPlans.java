@@ -0,0 +1,354 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.annotation.Counted;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.interceptor.InvocationContext;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Resolves once per intercepted member the metric and the annotation attributes
+// used by the interceptors so that their steady-state path is a single map lookup.
+// Plans are evicted when their metric is removed from the registry so that
+// the interceptors keep reporting missing metrics.
+@ApplicationScoped
+/* package-private */ class InvocationPlans {
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private MetricResolver resolver;
+
+    @Inject
+    private MetricNames names;
+
+    @Inject
+    private MetricsExtension extension;
+
+    @Inject
+    private Reservoirs reservoirs;
+
+    @Inject
+    private DynamicMetrics dynamic;
+
+    @Inject
+    private MetricsSwitchBean metricsSwitch;
+
+    private final ConcurrentMap<Member, CountedPlan> counted = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Member, ExceptionMeteredPlan> exceptionMetered = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Member, Plan<Meter>> metered = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Member, Plan<Timer>> timed = new ConcurrentHashMap<>();
+
+    private final MetricRegistryListener listener = new Eviction();
+
+    private SelfMetrics self;
+
+    @PostConstruct
+    private void addListener() {
+        registry.addListener(listener);
+        self = extension.getSelfMetrics();
+    }
+
+    @PreDestroy
+    private void removeListener() {
+        registry.removeListener(listener);
+    }
+
+    <E extends Member & AnnotatedElement> CountedPlan counted(E element) {
+        CountedPlan plan = counted.get(element);
+        if (plan != null) {
+            self.plans.hit();
+            return plan;
+        }
+
+        self.plans.miss();
+
+        MetricResolver.Of<Counted> of = resolver.counted(element);
+        plan = new CountedPlan(of.metricName(), of.metricId(), metric(of, element, Counter.class, "counter"), tags(of, element, Counter.class), CompletionStages.isAsync(element), of.metricAnnotation().monotonic());
+        return of.isStatic() ? cache(counted, element, plan) : toggle(plan);
+    }
+
+    <E extends Member & AnnotatedElement> ExceptionMeteredPlan exceptionMetered(E element) {
+        ExceptionMeteredPlan plan = exceptionMetered.get(element);
+        if (plan != null) {
+            self.plans.hit();
+            return plan;
+        }
+
+        self.plans.miss();
+
+        MetricResolver.Of<ExceptionMetered> of = resolver.exceptionMetered(element);
+        plan = new ExceptionMeteredPlan(of.metricName(), of.metricId(), metric(of, element, Meter.class, "meter"), tags(of, element, Meter.class), CompletionStages.isAsync(element), of.metricAnnotation().cause());
+        return of.isStatic() ? cache(exceptionMetered, element, plan) : toggle(plan);
+    }
+
+    <E extends Member & AnnotatedElement> Plan<Meter> metered(E element) {
+        Plan<Meter> plan = metered.get(element);
+        if (plan != null) {
+            self.plans.hit();
+            return plan;
+        }
+
+        self.plans.miss();
+
+        MetricResolver.Of<Metered> of = resolver.metered(element);
+        plan = new Plan<>(of.metricName(), of.metricId(), metric(of, element, Meter.class, "meter"), tags(of, element, Meter.class), false);
+        return of.isStatic() ? cache(metered, element, plan) : toggle(plan);
+    }
+
+    <E extends Member & AnnotatedElement> Plan<Timer> timed(E element) {
+        Plan<Timer> plan = timed.get(element);
+        if (plan != null) {
+            self.plans.hit();
+            return plan;
+        }
+
+        self.plans.miss();
+
+        MetricResolver.Of<Timed> of = resolver.timed(element);
+        plan = new Plan<>(of.metricName(), of.metricId(), metric(of, element, Timer.class, "timer"), tags(of, element, Timer.class), CompletionStages.isAsync(element));
+        return of.isStatic() ? cache(timed, element, plan) : toggle(plan);
+    }
+
+    // Resolves the plan of a metric registered eagerly so that the first invocation does not have to
+    void plan(MetricsMetadata.MetricMember<?> metric) {
+        if (metric.element instanceof Method)
+            plan((Method) metric.element, metric.type);
+        else
+            plan((Constructor<?>) metric.element, metric.type);
+    }
+
+    private <E extends Member & AnnotatedElement> void plan(E element, Class<? extends Annotation> type) {
+        if (Counted.class.equals(type))
+            counted(element);
+        else if (ExceptionMetered.class.equals(type))
+            exceptionMetered(element);
+        else if (Metered.class.equals(type))
+            metered(element);
+        else if (Timed.class.equals(type))
+            timed(element);
+    }
+
+    private <T extends Metric> T metric(MetricResolver.Of<?> of, Member element, Class<T> type, String kind) {
+        // Metrics tagged with parameter values are resolved for each invocation
+        if (of.hasParameterTags())
+            return null;
+
+        // Metrics whose name contains expressions are registered through the guard as their name is resolved for each invocation
+        if (!of.isStatic())
+            return type.cast(dynamic(element, of, type));
+
+        String name = of.metricName();
+        Metric metric = registry.getMetrics().get(name);
+        if (metric == null)
+            throw new IllegalStateException("No " + kind + " with name [" + name + "] found in registry [" + registry + "]");
+
+        return type.cast(metric);
+    }
+
+    private Metric dynamic(Member element, MetricResolver.Of<?> of, Class<? extends Metric> type) {
+        Object declaration = DynamicMetrics.declaration(element, of.metricAnnotation().annotationType());
+        if (Counter.class.equals(type))
+            return dynamic.counter(declaration, of.metricName());
+        else if (Meter.class.equals(type))
+            return dynamic.meter(declaration, of.metricName());
+        else
+            return dynamic.timer(declaration, of.metricName(), element);
+    }
+
+    private <T extends Metric> ParameterTags<T> tags(MetricResolver.Of<?> of, Member element, Class<T> type) {
+        if (of.hasParameterTags())
+            return new ParameterTags<>(of.metricName(), element, extension.getMaxTagCombinations(), factory(element, type));
+        else
+            return null;
+    }
+
+    // The metrics of the parameter tag combinations are tracked for idle eviction
+    private <T extends Metric> MetricFactory<T> factory(final Member element, final Class<T> type) {
+        return new MetricFactory<T>() {
+            @Override
+            public T metric(String name) {
+                Metric metric;
+                if (Counter.class.equals(type))
+                    metric = registry.counter(name);
+                else if (Meter.class.equals(type))
+                    metric = registry.meter(name);
+                else
+                    metric = reservoirs.timer(name, element);
+                return dynamic.track(name, type.cast(metric));
+            }
+
+            @Override
+            public DynamicMetrics.Activity activity(String name) {
+                return dynamic.activity(name);
+            }
+        };
+    }
+
+    private <P extends Plan<?>> P cache(ConcurrentMap<Member, P> plans, Member member, P plan) {
+        P previous = plans.putIfAbsent(member, plan);
+        if (previous != null)
+            return previous;
+
+        // The metric may have been removed while the plan was being resolved
+        if (plan.tags == null && registry.getMetrics().get(plan.name) != plan.metric)
+            plans.remove(member, plan);
+
+        // The switch is read once the plan is cached so that concurrent toggles are not missed
+        return toggle(plan);
+    }
+
+    private <P extends Plan<?>> P toggle(P plan) {
+        plan.enabled = metricsSwitch.isEnabled(plan.name);
+        return plan;
+    }
+
+    // Applies the switch state to the cached plans
+    void toggle() {
+        toggle(counted);
+        toggle(exceptionMetered);
+        toggle(metered);
+        toggle(timed);
+    }
+
+    private void toggle(ConcurrentMap<Member, ? extends Plan<?>> plans) {
+        for (Plan<?> plan : plans.values())
+            toggle(plan);
+    }
+
+    private void evict(String name) {
+        evictTags(counted, name);
+        evictTags(exceptionMetered, name);
+        evictTags(metered, name);
+        evictTags(timed, name);
+
+        // Only plans of interned names are cached
+        int id = names.id(name);
+        if (id < 0)
+            return;
+
+        evict(counted, id);
+        evict(exceptionMetered, id);
+        evict(metered, id);
+        evict(timed, id);
+    }
+
+    private static void evict(ConcurrentMap<Member, ? extends Plan<?>> plans, int id) {
+        Iterator<? extends Plan<?>> iterator = plans.values().iterator();
+        while (iterator.hasNext())
+            if (iterator.next().id == id)
+                iterator.remove();
+    }
+
+    private static void evictTags(ConcurrentMap<Member, ? extends Plan<?>> plans, String name) {
+        for (Plan<?> plan : plans.values())
+            if (plan.tags != null)
+                plan.tags.evict(name);
+    }
+
+    static class Plan<M extends Metric> {
+
+        final String name;
+
+        // The id of the interned metric name
+        final int id;
+
+        // Null if the metric is tagged with parameter values
+        final M metric;
+
+        final ParameterTags<M> tags;
+
+        // Whether the intercepted method may return a CompletionStage
+        final boolean async;
+
+        // Whether the metric is enabled with the switch, the only state read by the disabled interceptors
+        volatile boolean enabled = true;
+
+        private Plan(String name, int id, M metric, ParameterTags<M> tags, boolean async) {
+            this.name = name;
+            this.id = id;
+            this.metric = metric;
+            this.tags = tags;
+            this.async = async;
+        }
+
+        M metric(InvocationContext context) {
+            return tags == null ? metric : tags.metric(context.getParameters());
+        }
+    }
+
+    static final class CountedPlan extends Plan<Counter> {
+
+        final boolean monotonic;
+
+        private CountedPlan(String name, int id, Counter counter, ParameterTags<Counter> tags, boolean async, boolean monotonic) {
+            super(name, id, counter, tags, async);
+            this.monotonic = monotonic;
+        }
+    }
+
+    static final class ExceptionMeteredPlan extends Plan<Meter> {
+
+        final Class<? extends Throwable> cause;
+
+        private ExceptionMeteredPlan(String name, int id, Meter meter, ParameterTags<Meter> tags, boolean async, Class<? extends Throwable> cause) {
+            super(name, id, meter, tags, async);
+            this.cause = cause;
+        }
+    }
+
+    private final class Eviction extends MetricRegistryListener.Base {
+
+        @Override
+        public void onCounterRemoved(String name) {
+            evict(name);
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            evict(name);
+        }
+
+        @Override
+        public void onTimerRemoved(String name) {
+            evict(name);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.MetricSet;
+
+import java.util.Set;
+
+/**
+ * A {@link MetricSet} whose metrics are computed when read rather than when registered, e.g. the metrics of
+ * a thread dump. When produced by a producer field or method of the application, one gauge per name returned by
+ * {@link #getNames()} gets registered at deployment time, whose value is the value of the gauge with the same name
+ * in the map returned by {@link #getMetrics()}, invoked when the registered gauges are read and shared by these gauges
+ * for the duration set with {@link MetricsConfiguration#lazyMetricSetTimeout(long, java.util.concurrent.TimeUnit)}.
+ */
+public interface LazyMetricSet extends MetricSet {
+
+    /**
+     * @return the names of the gauges of this set, relative to the name of the producer
+     */
+    Set<String> getNames();
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+/**
+ * A gauge whose value can be read as a primitive {@code long} without boxing.
+ *
+ * The gauges that Metrics CDI registers for {@code @Gauge} methods returning {@code byte}, {@code short},
+ * {@code int} or {@code long} values implement that interface, so that reporters polling them frequently
+ * can avoid the allocation of the boxed value returned by {@link com.codahale.metrics.Gauge#getValue()}.
+ */
+public interface LongGauge {
+
+    /**
+     * Returns the gauge value as a primitive {@code long}.
+     *
+     * @return the gauge value
+     */
+    long getLongValue();
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+
+import javax.enterprise.inject.Vetoed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// A reporter configured with the Metrics CDI configuration whose reports are run by the Metrics CDI scheduler
+// rather than by its own thread. The first report is delayed by a random fraction of the period so that
+// the reporters sharing the scheduler do not all snapshot the registry at the same instant.
+@Vetoed
+/* package-private */ final class ManagedReporter implements Runnable {
+
+    static final String FAILURES = MetricRegistry.name(SelfMetrics.PREFIX, "reporters", "failures");
+
+    private final ScheduledReporter reporter;
+
+    private final long period;
+
+    private MetricRegistry registry;
+
+    private ScheduledFuture<?> future;
+
+    ManagedReporter(ScheduledReporter reporter, long period, TimeUnit unit) {
+        this.reporter = reporter;
+        this.period = unit.toNanos(period);
+    }
+
+    void start(MetricsScheduler scheduler, MetricRegistry registry) {
+        this.registry = registry;
+        future = scheduler.scheduleAtFixedRate(this, ThreadLocalRandom.current().nextLong(period), period, TimeUnit.NANOSECONDS);
+    }
+
+    void stop() {
+        if (future != null)
+            future.cancel(false);
+        reporter.stop();
+    }
+
+    @Override
+    public void run() {
+        try {
+            reporter.report();
+        } catch (Throwable cause) {
+            // A failing report must not cancel the next ones, as any throwable would cancel the periodic task
+            registry.meter(FAILURES).mark();
+            if (cause instanceof VirtualMachineError)
+                throw (VirtualMachineError) cause;
+        }
+    }
+}
@@ -16,7 +16,6 @@
 package io.astefanutti.metrics.cdi;
 
 import com.codahale.metrics.Meter;
-import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.annotation.Metered;
 
 import javax.annotation.Priority;
@@ -34,14 +33,14 @@ import javax.interceptor.AroundTimeout;
 @Priority(Interceptor.Priority.LIBRARY_BEFORE + 10)
 /* packaged-private */ class MeteredInterceptor {
 
-    private final MetricRegistry registry;
+    private final InvocationPlans plans;
 
-    private final MetricResolver resolver;
+    private final SelfMetrics self;
 
     @Inject
-    private MeteredInterceptor(MetricRegistry registry, MetricResolver resolver) {
-        this.registry = registry;
-        this.resolver = resolver;
+    private MeteredInterceptor(InvocationPlans plans, MetricsExtension extension) {
+        this.plans = plans;
+        this.self = extension.getSelfMetrics();
     }
 
     @AroundConstruct
@@ -60,12 +59,23 @@ import javax.interceptor.AroundTimeout;
     }
 
     private <E extends Member & AnnotatedElement> Object meteredCallable(InvocationContext context, E element) throws Exception {
-        String name = resolver.metered(element).metricName();
-        Meter meter = (Meter) registry.getMetrics().get(name);
-        if (meter == null)
-            throw new IllegalStateException("No meter with name [" + name + "] found in registry [" + registry + "]");
+        if (!self.isEnabled())
+            return mark(context, element, null);
 
-        meter.mark();
-        return context.proceed();
+        SelfMetrics.Overhead overhead = self.overhead();
+        long saved = overhead.begin();
+        long start = System.nanoTime();
+        try {
+            return mark(context, element, overhead);
+        } finally {
+            overhead.end(self.metered, start, saved);
+        }
+    }
+
+    private <E extends Member & AnnotatedElement> Object mark(InvocationContext context, E element, SelfMetrics.Overhead overhead) throws Exception {
+        InvocationPlans.Plan<Meter> metered = plans.metered(element);
+        if (metered.enabled)
+            metered.metric(context).mark();
+        return SelfMetrics.proceed(context, overhead);
     }
 }
@@ -26,4 +26,7 @@ import javax.enterprise.inject.spi.InjectionPoint;
 
     // TODO: expose an SPI so that external strategies can be provided. For example, Camel CDI could provide a property placeholder resolution strategy.
     String of(String attribute);
+
+    // Returns whether the attribute resolves to the same name each time it gets evaluated
+    boolean isStatic(String attribute);
 }
@@ -15,25 +15,40 @@
  */
 package io.astefanutti.metrics.cdi;
 
+import javax.annotation.PostConstruct;
 import javax.el.ELException;
 import javax.el.ExpressionFactory;
-import javax.enterprise.context.Dependent;
+import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Produces;
 import javax.enterprise.inject.spi.BeanManager;
+import javax.inject.Inject;
 
-@Dependent
+@ApplicationScoped
 /* package-private */ class MetricNameFactory {
 
-    @Produces
-    // TODO: should be declared @ApplicationScoped when WELD-2083 is fixed
-    private MetricName metricName(BeanManager manager) {
+    @Inject
+    private BeanManager manager;
+
+    private MetricName metricName;
+
+    @PostConstruct
+    private void createMetricName() {
         try {
             // Cannot be inlined as OWB throws a NPE when manager.getELResolver() gets called
             ExpressionFactory factory = ExpressionFactory.newInstance();
-            return new ElMetricName(manager.getELResolver(), manager.wrapExpressionFactory(factory), manager.getExtension(MetricsExtension.class).getParameters());
+            MetricsExtension extension = manager.getExtension(MetricsExtension.class);
+            metricName = new ElMetricName(manager.getELResolver(), manager.wrapExpressionFactory(factory), extension.getParameters(), extension.getSelfMetrics());
         } catch (ELException cause) {
             // Falls back to SE
-            return new SeMetricName(manager.getExtension(MetricsExtension.class).getParameters());
+            metricName = new SeMetricName(manager.getExtension(MetricsExtension.class).getParameters());
         }
     }
+
+    @Produces
+    // The produced bean cannot be declared @ApplicationScoped until WELD-2083 is fixed.
+    // It is @Dependent and proxy-free instead, while the single instance, and the EL
+    // infrastructure it relies on, is created once per deployment by this factory.
+    private MetricName metricName() {
+        return metricName;
+    }
 }
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.annotation.Metric;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.spi.Annotated;
+import javax.enterprise.inject.spi.InjectionPoint;
+import javax.inject.Inject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Deployment-wide table of the static metric names. Each distinct name is interned once
+// into a canonical instance along with an integer id so that the interceptors, producers
+// and gauges declaring the same metric share the same string and can be matched by id.
+// Names with expressions are never interned as they may resolve to an unbounded set of values.
+@ApplicationScoped
+/* package-private */ class MetricNames {
+
+    @Inject
+    private MetricName metricName;
+
+    @Inject
+    private MetricsExtension extension;
+
+    private final ConcurrentMap<String, Name> names = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Annotated, String> injectionPoints = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private int size;
+
+    Name intern(String name) {
+        Name interned = names.get(name);
+        if (interned != null)
+            return interned;
+
+        // Ids are assigned under lock so that they remain dense
+        synchronized (this) {
+            interned = names.get(name);
+            if (interned == null) {
+                interned = new Name(name, size++);
+                names.put(name, interned);
+            }
+        }
+        return interned;
+    }
+
+    // Returns the id of the name or -1 if that name has not been interned
+    int id(String name) {
+        Name interned = names.get(name);
+        return interned == null ? -1 : interned.id;
+    }
+
+    String of(InjectionPoint ip) {
+        Annotated annotated = ip.getAnnotated();
+        // Programmatic injection points may not provide their annotated element, in which case the name is resolved each time
+        if (annotated == null) {
+            extension.getSelfMetrics().injectionPoints.miss();
+            return metricName.of(ip);
+        }
+
+        String name = injectionPoints.get(annotated);
+        if (name != null) {
+            extension.getSelfMetrics().injectionPoints.hit();
+            return name;
+        }
+
+        extension.getSelfMetrics().injectionPoints.miss();
+
+        name = TaggedName.name(metricName.of(ip), StaticTags.of(annotated));
+        if (!isStatic(annotated))
+            return name;
+
+        name = intern(name).value;
+        String previous = injectionPoints.putIfAbsent(annotated, name);
+        return previous != null ? previous : name;
+    }
+
+    // Returns whether the metric name of the injection point resolves to the same name each time it gets evaluated
+    boolean isStatic(InjectionPoint ip) {
+        return isStatic(ip.getAnnotated());
+    }
+
+    private boolean isStatic(Annotated annotated) {
+        if (annotated == null)
+            return true;
+        Metric metric = annotated.getAnnotation(Metric.class);
+        return metric == null || metricName.isStatic(metric.name());
+    }
+
+    static final class Name {
+
+        final String value;
+
+        final int id;
+
+        private Name(String value, int id) {
+            this.value = value;
+            this.id = id;
+        }
+    }
+}
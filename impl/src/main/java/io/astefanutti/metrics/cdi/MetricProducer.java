@@ -35,35 +35,39 @@ import javax.interceptor.Interceptor;
 /* package-private */ final class MetricProducer {
 
     @Produces
-    private static Counter counter(InjectionPoint ip, MetricRegistry registry, MetricName metricName) {
-        return registry.counter(metricName.of(ip));
+    private static Counter counter(InjectionPoint ip, MetricRegistry registry, MetricNames names, DynamicMetrics dynamic) {
+        String name = names.of(ip);
+        return names.isStatic(ip) ? registry.counter(name) : dynamic.counter(ip.getAnnotated(), name);
     }
 
     @Produces
-    private static <T> Gauge<T> gauge(final InjectionPoint ip, final MetricRegistry registry, final MetricName metricName) {
+    private static <T> Gauge<T> gauge(final InjectionPoint ip, final MetricRegistry registry, final MetricNames names) {
         // A forwarding Gauge must be returned as the Gauge creation happens when the declaring bean gets instantiated and the corresponding Gauge can be injected before which leads to producing a null value
         return new Gauge<T>() {
             @Override
             @SuppressWarnings("unchecked")
             public T getValue() {
                 // TODO: better error report when the gauge doesn't exist
-                return ((Gauge<T>) registry.getGauges().get(metricName.of(ip))).getValue();
+                return ((Gauge<T>) registry.getGauges().get(names.of(ip))).getValue();
             }
         };
     }
 
     @Produces
-    private static Histogram histogram(InjectionPoint ip, MetricRegistry registry, MetricName metricName) {
-        return registry.histogram(metricName.of(ip));
+    private static Histogram histogram(InjectionPoint ip, Reservoirs reservoirs, MetricNames names, DynamicMetrics dynamic) {
+        String name = names.of(ip);
+        return names.isStatic(ip) ? reservoirs.histogram(name, reservoirs.reservoirOf(ip)) : dynamic.histogram(ip.getAnnotated(), name, reservoirs.reservoirOf(ip));
     }
 
     @Produces
-    private static Meter meter(InjectionPoint ip, MetricRegistry registry, MetricName metricName) {
-        return registry.meter(metricName.of(ip));
+    private static Meter meter(InjectionPoint ip, MetricRegistry registry, MetricNames names, DynamicMetrics dynamic) {
+        String name = names.of(ip);
+        return names.isStatic(ip) ? registry.meter(name) : dynamic.meter(ip.getAnnotated(), name);
     }
 
     @Produces
-    private static Timer timer(InjectionPoint ip, MetricRegistry registry, MetricName metricName) {
-        return registry.timer(metricName.of(ip));
+    private static Timer timer(InjectionPoint ip, Reservoirs reservoirs, MetricNames names, DynamicMetrics dynamic) {
+        String name = names.of(ip);
+        return names.isStatic(ip) ? reservoirs.timer(name, reservoirs.reservoirOf(ip)) : dynamic.timer(ip.getAnnotated(), name, reservoirs.reservoirOf(ip));
     }
 }
\ No newline at end of file
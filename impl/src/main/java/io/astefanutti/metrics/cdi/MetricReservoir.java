@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Reservoir;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Selects the type of reservoir of a timer or histogram registered by Metrics CDI, overriding the type configured
+ * globally for the application with {@link MetricsConfiguration#reservoir(Class)}. The reservoir type must have
+ * a public no-argument constructor.
+ *
+ * It can be declared along with the {@code @Timed} annotation on a constructor, method or class,
+ * or on a {@code Histogram} or {@code Timer} injection point, e.g.:
+ *
+ * <pre><code>
+ * {@literal @}Inject
+ * {@literal @}MetricReservoir(HdrHistogramReservoir.class)
+ * private Timer timer;
+ * </code></pre>
+ *
+ * The reservoir type only applies when the metric gets registered. It is ignored if a metric with the same name
+ * has already been registered in the metric registry.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.CONSTRUCTOR, ElementType.METHOD, ElementType.FIELD, ElementType.PARAMETER})
+public @interface MetricReservoir {
+
+    /**
+     * @return the type of reservoir of the annotated timer or histogram
+     */
+    Class<? extends Reservoir> value();
+}
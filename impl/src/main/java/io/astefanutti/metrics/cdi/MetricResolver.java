@@ -31,6 +31,10 @@ import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @ApplicationScoped
 /* package-private */ class MetricResolver {
@@ -41,6 +45,21 @@ import java.lang.reflect.Method;
     @Inject
     private MetricName metricName;
 
+    @Inject
+    private MetricNames names;
+
+    // Static names are resolved once per member and annotation type
+    private final Map<Class<? extends Annotation>, ConcurrentMap<Member, Of<?>>> resolved = new HashMap<>();
+
+    {
+        resolved.put(CachedGauge.class, new ConcurrentHashMap<Member, Of<?>>());
+        resolved.put(Counted.class, new ConcurrentHashMap<Member, Of<?>>());
+        resolved.put(ExceptionMetered.class, new ConcurrentHashMap<Member, Of<?>>());
+        resolved.put(Gauge.class, new ConcurrentHashMap<Member, Of<?>>());
+        resolved.put(Metered.class, new ConcurrentHashMap<Member, Of<?>>());
+        resolved.put(Timed.class, new ConcurrentHashMap<Member, Of<?>>());
+    }
+
     Of<CachedGauge> cachedGauge(Method method) {
         return resolverOf(method, CachedGauge.class);
     }
@@ -65,22 +84,67 @@ import java.lang.reflect.Method;
         return resolverOf(element, Timed.class);
     }
 
-    private <E extends Member & AnnotatedElement, T extends Annotation> Of<T> resolverOf(E element, Class<T> type) {
+    @SuppressWarnings("unchecked")
+    <E extends Member & AnnotatedElement, T extends Annotation> Of<T> resolverOf(E element, Class<T> type) {
+        SelfMetrics self = extension.getSelfMetrics();
+        ConcurrentMap<Member, Of<?>> members = resolved.get(type);
+        Of<T> of = (Of<T>) members.get(element);
+        if (of != null) {
+            self.resolver.hit();
+            return of;
+        }
+
+        self.resolver.miss();
+        long start = self.start();
+        of = resolve(element, type);
+        self.stop(self.resolutions, start);
+        // Names with expressions are resolved again on each call
+        if (of.isPresent() && !of.isStatic())
+            return of;
+
+        Of<?> previous = members.putIfAbsent(element, of);
+        return previous != null ? (Of<T>) previous : of;
+    }
+
+    private <E extends Member & AnnotatedElement, T extends Annotation> Of<T> resolve(E element, Class<T> type) {
         if (element.isAnnotationPresent(type)) {
             T annotation = element.getAnnotation(type);
-            String name = metricName(element, type, metricName(annotation), isMetricAbsolute(annotation));
-            return new DoesHaveMetric<>(annotation, name);
+            String name = indexedName(element, type);
+            if (name == null)
+                name = metricName(element, type, metricName(annotation), isMetricAbsolute(annotation));
+            return doesHaveMetric(element, annotation, name);
         } else {
             Class<?> bean = element.getDeclaringClass();
             if (bean.isAnnotationPresent(type)) {
                 T annotation = bean.getAnnotation(type);
-                String name = metricName(bean, element, type, metricName(annotation), isMetricAbsolute(annotation));
-                return new DoesHaveMetric<>(annotation, name);
+                String name = indexedName(element, type);
+                if (name == null)
+                    name = metricName(bean, element, type, metricName(annotation), isMetricAbsolute(annotation));
+                return doesHaveMetric(element, annotation, name);
             }
         }
         return new DoesNotHaveMetric<>();
     }
 
+    private <E extends Member & AnnotatedElement, T extends Annotation> Of<T> doesHaveMetric(E element, T annotation, String name) {
+        name = TaggedName.name(name, StaticTags.of(element.getDeclaringClass(), element));
+        boolean tagged = ParameterTags.isPresent(element);
+        if (metricName.isStatic(metricName(annotation))) {
+            MetricNames.Name interned = names.intern(name);
+            return new DoesHaveMetric<>(annotation, interned.value, interned.id, true, tagged);
+        } else {
+            return new DoesHaveMetric<>(annotation, name, -1, false, tagged);
+        }
+    }
+
+    // Metric names generated at compile time do not contain expressions
+    private <E extends Member & AnnotatedElement> String indexedName(E element, Class<? extends Annotation> type) {
+        MetricsIndex index = extension.getIndex();
+        if (index.isEmpty())
+            return null;
+        return index.metricName(element, type, extension.getParameters().contains(MetricsParameter.useAbsoluteName));
+    }
+
     // TODO: should be grouped with the metric name strategy
     private <E extends Member & AnnotatedElement> String metricName(E element, Class<? extends Annotation> type, String name, boolean absolute) {
         String metric = name.isEmpty() ? defaultName(element, type) : metricName.of(name);
@@ -153,7 +217,15 @@ import java.lang.reflect.Method;
 
         String metricName();
 
+        // The id of the interned metric name or -1 for names with expressions
+        int metricId();
+
         T metricAnnotation();
+
+        boolean isStatic();
+
+        // Returns whether the metric is tagged with the values of some parameters of the member
+        boolean hasParameterTags();
     }
 
     private static final class DoesHaveMetric<T extends Annotation> implements Of<T> {
@@ -162,9 +234,18 @@ import java.lang.reflect.Method;
 
         private final String name;
 
-        private DoesHaveMetric(T annotation, String name) {
+        private final int id;
+
+        private final boolean isStatic;
+
+        private final boolean hasParameterTags;
+
+        private DoesHaveMetric(T annotation, String name, int id, boolean isStatic, boolean hasParameterTags) {
             this.annotation = annotation;
             this.name = name;
+            this.id = id;
+            this.isStatic = isStatic;
+            this.hasParameterTags = hasParameterTags;
         }
 
         @Override
@@ -177,10 +258,25 @@ import java.lang.reflect.Method;
             return name;
         }
 
+        @Override
+        public int metricId() {
+            return id;
+        }
+
         @Override
         public T metricAnnotation() {
             return annotation;
         }
+
+        @Override
+        public boolean isStatic() {
+            return isStatic;
+        }
+
+        @Override
+        public boolean hasParameterTags() {
+            return hasParameterTags;
+        }
     }
 
     @Vetoed
@@ -199,9 +295,24 @@ import java.lang.reflect.Method;
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public int metricId() {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public T metricAnnotation() {
             throw new UnsupportedOperationException();
         }
+
+        @Override
+        public boolean isStatic() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasParameterTags() {
+            throw new UnsupportedOperationException();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Times only a sample of the invocations of a constructor or method declared with the {@code @Timed} annotation,
+ * overriding the sampling configured globally for the application with {@link MetricsConfiguration#timedSampling(int)}
+ * and {@link MetricsConfiguration#timedSamplingProbability(double)}. It can be declared along with the {@code @Timed}
+ * annotation on a constructor, method or class, e.g.:
+ *
+ * <pre><code>
+ * {@literal @}Timed
+ * {@literal @}MetricSampling(every = 100)
+ * public void hotMethod() {
+ * }
+ * </code></pre>
+ *
+ * All the invocations are counted so that the count and the rates of the timer reflect all of them,
+ * while only the durations of the sampled invocations are recorded in its reservoir.
+ *
+ * The sampling only applies when the timer gets registered. It is ignored if a metric with the same name
+ * has already been registered in the metric registry.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.CONSTRUCTOR, ElementType.METHOD})
+public @interface MetricSampling {
+
+    /**
+     * @return the number of invocations out of which one invocation is timed, counted per thread, {@code 1} to time every invocation
+     */
+    int every() default 1;
+
+    /**
+     * @return the probability for each invocation to be timed, when {@link #every()} is {@code 1}
+     */
+    double probability() default 1D;
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+
+import javax.enterprise.inject.Vetoed;
+import java.util.Map;
+
+// Registers the metrics of the metric sets produced by the application under the name of their producer.
+// Nested metric sets are flattened and the metrics of lazy metric sets are registered as forwarding gauges
+// that share the metrics computed by their set during the given timeout, in nanoseconds.
+@Vetoed
+/* package-private */ final class MetricSets {
+
+    private MetricSets() {
+    }
+
+    static void register(MetricRegistry registry, String prefix, Map<String, String> tags, MetricSet set, long timeout) {
+        if (set instanceof LazyMetricSet) {
+            Memoized memoized = new Memoized((LazyMetricSet) set, timeout);
+            for (String name : ((LazyMetricSet) set).getNames())
+                registry.register(TaggedName.name(MetricRegistry.name(prefix, name), tags), new LazyGauge(memoized, name));
+            return;
+        }
+
+        for (Map.Entry<String, Metric> metric : set.getMetrics().entrySet()) {
+            String name = MetricRegistry.name(prefix, metric.getKey());
+            if (metric.getValue() instanceof MetricSet)
+                register(registry, name, tags, (MetricSet) metric.getValue(), timeout);
+            else
+                registry.register(TaggedName.name(name, tags), metric.getValue());
+        }
+    }
+
+    // Computes the metrics of a lazy metric set at most once per timeout for all the gauges of that set
+    private static final class Memoized {
+
+        private final LazyMetricSet set;
+
+        private final long timeout;
+
+        private volatile Computation computation;
+
+        private Memoized(LazyMetricSet set, long timeout) {
+            this.set = set;
+            this.timeout = timeout;
+        }
+
+        Map<String, Metric> getMetrics() {
+            if (timeout == 0L)
+                return set.getMetrics();
+
+            Computation computation = this.computation;
+            if (computation != null && System.nanoTime() - computation.expiry < 0L)
+                return computation.metrics;
+
+            synchronized (this) {
+                computation = this.computation;
+                if (computation == null || System.nanoTime() - computation.expiry >= 0L) {
+                    Map<String, Metric> metrics = set.getMetrics();
+                    computation = new Computation(metrics, System.nanoTime() + timeout);
+                    this.computation = computation;
+                }
+                return computation.metrics;
+            }
+        }
+    }
+
+    private static final class Computation {
+
+        private final Map<String, Metric> metrics;
+
+        private final long expiry;
+
+        private Computation(Map<String, Metric> metrics, long expiry) {
+            this.metrics = metrics;
+            this.expiry = expiry;
+        }
+    }
+
+    private static final class LazyGauge implements Gauge<Object> {
+
+        private final Memoized set;
+
+        private final String name;
+
+        private LazyGauge(Memoized set, String name) {
+            this.set = set;
+            this.name = name;
+        }
+
+        @Override
+        public Object getValue() {
+            Metric metric = set.getMetrics().get(name);
+            if (metric == null)
+                return null;
+            if (!(metric instanceof Gauge))
+                throw new IllegalStateException("Metric [" + name + "] of lazy metric set [" + set.set + "] is not a gauge");
+            return ((Gauge<?>) metric).getValue();
+        }
+    }
+}
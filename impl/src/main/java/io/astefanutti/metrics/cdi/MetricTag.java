@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Adds a tag to the metrics registered by Metrics CDI. The tags are encoded in the registered metric name
+ * as described by {@link TaggedName}, sorted by key.
+ *
+ * It can be declared along with the Metrics annotations on a constructor, method or class, or along with the
+ * {@code @Metric} annotation on an injection point, in which case the tag is static, e.g.:
+ *
+ * <pre><code>
+ * {@literal @}Inject
+ * {@literal @}Metric(name = "hits")
+ * {@literal @}MetricTag(key = "region", value = "eu")
+ * private Meter hits;
+ * </code></pre>
+ *
+ * Tags declared on a member override the tags with the same key declared on the class.
+ *
+ * It can also be declared on a parameter of an intercepted constructor or method, in which case the tag value
+ * is the string representation of the argument of each invocation and the {@code value} attribute is ignored, e.g.:
+ *
+ * <pre><code>
+ * {@literal @}Timed(name = "requests")
+ * public void request({@literal @}MetricTag(key = "tenant") String tenant) {
+ * }
+ * </code></pre>
+ *
+ * A metric gets registered for each distinct combination of argument values, up to the limit configured with
+ * {@link MetricsConfiguration#maxTagCombinations(int)}. The invocations of any other combination are recorded
+ * in a single metric whose parameter tag values are {@value TaggedName#OVERFLOW}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.CONSTRUCTOR, ElementType.METHOD, ElementType.FIELD, ElementType.PARAMETER})
+public @interface MetricTag {
+
+    /**
+     * @return the key of the tag
+     */
+    String key();
+
+    /**
+     * @return the value of the tag, ignored on the parameters of intercepted constructors and methods
+     */
+    String value() default "";
+}
@@ -15,6 +15,11 @@
  */
 package io.astefanutti.metrics.cdi;
 
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.ScheduledReporter;
+
+import java.util.concurrent.TimeUnit;
+
 /**
  * The Metrics CDI configuration. Metrics CDI fires a {@code MetricsConfiguration} event
  * during the deployment phase that the application can observe and use to configure it.
@@ -30,4 +35,150 @@ public interface MetricsConfiguration {
      * @throws IllegalStateException if called outside of the observer method invocation
      */
     MetricsConfiguration useAbsoluteName(boolean useAbsoluteName);
+
+    /**
+     * Registers the metrics declared with the Metrics annotations on the constructors and methods of the managed beans
+     * at deployment time instead of when the beans get constructed for the first time.
+     * Metrics whose name contains expressions are still registered when the beans get constructed.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     */
+    MetricsConfiguration eagerRegistration(boolean eagerRegistration);
+
+    /**
+     * Registers the gauges declared with the {@code @Gauge} and {@code @CachedGauge} annotations on non-static methods
+     * so that they reference the bean instances weakly and get unregistered once all the bean instances declaring them are destroyed.
+     * The value of such a gauge is aggregated across the live bean instances, by summing the numeric values or by returning
+     * the value of the most recently constructed instance otherwise, so that beans of any scope can declare gauges without
+     * leaking their instances.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     */
+    MetricsConfiguration weakGaugeTargets(boolean weakGaugeTargets);
+
+    /**
+     * Registers the gauges declared with the {@code @CachedGauge} annotation so that their value is recomputed
+     * in the background by a bounded scheduler, with the annotation timeout as the delay between two refreshes,
+     * instead of by the thread reading the gauge once the cached value has expired. Readers always get the last computed value
+     * without blocking, and {@code null} until the first refresh completes. The duration of the refreshes and their failures
+     * are registered as metrics named after the gauge, with the {@code refresh} and {@code refresh.failures} suffixes.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     */
+    MetricsConfiguration refreshAheadCachedGauges(boolean refreshAheadCachedGauges);
+
+    /**
+     * Registers the {@link MetricsSwitch} into the platform MBean server with the {@value MetricsSwitch#OBJECT_NAME}
+     * object name so that the metrics can be enabled or disabled at runtime with JMX. It gets unregistered on shutdown.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     */
+    MetricsConfiguration jmxSwitch(boolean jmxSwitch);
+
+    /**
+     * Registers the metrics measuring the overhead of Metrics CDI itself under the {@code io.astefanutti.metrics.cdi} prefix,
+     * i.e. the duration of its deployment phases, the count and duration of the metric name resolutions and EL evaluations,
+     * the hit ratios of its resolution caches and the time spent in its interceptors.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     */
+    MetricsConfiguration selfInstrumentation(boolean selfInstrumentation);
+
+    /**
+     * Sets the type of reservoir of the timers and histograms registered by Metrics CDI globally for the application,
+     * e.g. {@link HdrHistogramReservoir}. The reservoir type must have a public no-argument constructor.
+     * It can be overridden for each metric with the {@link MetricReservoir} annotation.
+     * Defaults to {@link com.codahale.metrics.ExponentiallyDecayingReservoir}.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     */
+    MetricsConfiguration reservoir(Class<? extends Reservoir> reservoir);
+
+    /**
+     * Adds a reporter whose reports are run periodically by the bounded scheduler shared by the Metrics CDI background tasks,
+     * instead of its own thread. The reports start once the deployment is validated, the first one after a random fraction
+     * of the period so that the reporters do not all report at the same instant, and the reporter is stopped on shutdown.
+     * The reporter must not be started. The failed reports are counted by the {@code io.astefanutti.metrics.cdi.reporters.failures} meter.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @throws IllegalArgumentException if {@code reporter} is null or {@code period} is not positive
+     */
+    MetricsConfiguration reporter(ScheduledReporter reporter, long period, TimeUnit unit);
+
+    /**
+     * Times only one in every {@code every} invocations of the constructors and methods declared with the {@code @Timed} annotation
+     * globally for the application. All the invocations are counted so that the count and the rates of the timers reflect all of them,
+     * while only the durations of the sampled invocations are recorded in their reservoir. It can be overridden for each timer
+     * with the {@link MetricSampling} annotation. Defaults to {@code 1}, i.e. every invocation is timed.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @throws IllegalArgumentException if {@code every} is not positive
+     */
+    MetricsConfiguration timedSampling(int every);
+
+    /**
+     * Times each invocation of the constructors and methods declared with the {@code @Timed} annotation with the given probability
+     * globally for the application, overriding {@link #timedSampling(int)}. All the invocations are counted so that the count and the rates
+     * of the timers reflect all of them. It can be overridden for each timer with the {@link MetricSampling} annotation.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @throws IllegalArgumentException if {@code probability} is not in the {@code (0, 1]} interval
+     */
+    MetricsConfiguration timedSamplingProbability(double probability);
+
+    /**
+     * Sets the maximum number of distinct combinations of parameter tag values for which a metric gets registered,
+     * for each constructor or method with parameters annotated with {@link MetricTag}. The invocations
+     * of any other combination are recorded in a single overflow metric, so that the number of registered metrics
+     * remains bounded whatever the arguments. Defaults to {@code 1000}.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @throws IllegalArgumentException if {@code maxTagCombinations} is not positive
+     */
+    MetricsConfiguration maxTagCombinations(int maxTagCombinations);
+
+    /**
+     * Sets the maximum number of metrics registered for each declaration whose metric name contains expressions,
+     * i.e. for each annotated constructor, method or injection point, so that expressions resolving to an unbounded set
+     * of names cannot flood the metric registry. The registrations beyond that limit are counted by the
+     * {@code io.astefanutti.metrics.cdi.rejected} counter and recorded into metrics that are not registered.
+     * Defaults to {@code 1000}.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @throws IllegalArgumentException if {@code maxDynamicMetrics} is not positive
+     */
+    MetricsConfiguration maxDynamicMetrics(int maxDynamicMetrics);
+
+    /**
+     * Removes from the metric registry the counters, meters and timers registered by the interceptors, whose
+     * name contains expressions or is tagged with parameter values, once their count has not changed
+     * within the given timeout. They are registered again on their next invocation. Defaults to {@code 0}, i.e. no eviction.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @throws IllegalArgumentException if {@code timeout} is negative
+     */
+    MetricsConfiguration dynamicMetricsIdleTimeout(long timeout, TimeUnit unit);
+
+    /**
+     * Sets the duration during which the metrics returned by a {@link LazyMetricSet} are reused by the gauges registered
+     * for that set, so that reading all these gauges, e.g. by a reporter, computes the set once. Defaults to {@code 1} second,
+     * {@code 0} to compute the set each time one of its gauges is read.
+     *
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @throws IllegalArgumentException if {@code timeout} is negative
+     */
+    MetricsConfiguration lazyMetricSetTimeout(long timeout, TimeUnit unit);
 }
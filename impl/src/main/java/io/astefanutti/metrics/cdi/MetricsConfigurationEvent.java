@@ -15,15 +15,35 @@
  */
 package io.astefanutti.metrics.cdi;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.ScheduledReporter;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /* package-private */ final class MetricsConfigurationEvent implements MetricsConfiguration {
 
     private final EnumSet<MetricsParameter> configuration = EnumSet.noneOf(MetricsParameter.class);
 
+    private Class<? extends Reservoir> reservoir = ExponentiallyDecayingReservoir.class;
+
+    private Sampling sampling = Sampling.NONE;
+
+    private int maxTagCombinations = 1000;
+
+    private int maxDynamicMetrics = 1000;
+
+    private long dynamicMetricsIdleTimeout;
+
+    private long lazyMetricSetTimeout = TimeUnit.SECONDS.toNanos(1L);
+
+    private final List<ManagedReporter> reporters = new ArrayList<>();
+
     private volatile boolean unmodifiable;
 
     @Override
@@ -36,10 +56,158 @@ import java.util.Set;
         return this;
     }
 
+    @Override
+    public MetricsConfiguration eagerRegistration(boolean eagerRegistration) {
+        throwsIfUnmodifiable();
+        if (eagerRegistration)
+            configuration.add(MetricsParameter.eagerRegistration);
+        else
+            configuration.remove(MetricsParameter.eagerRegistration);
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration weakGaugeTargets(boolean weakGaugeTargets) {
+        throwsIfUnmodifiable();
+        if (weakGaugeTargets)
+            configuration.add(MetricsParameter.weakGaugeTargets);
+        else
+            configuration.remove(MetricsParameter.weakGaugeTargets);
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration refreshAheadCachedGauges(boolean refreshAheadCachedGauges) {
+        throwsIfUnmodifiable();
+        if (refreshAheadCachedGauges)
+            configuration.add(MetricsParameter.refreshAheadCachedGauges);
+        else
+            configuration.remove(MetricsParameter.refreshAheadCachedGauges);
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration jmxSwitch(boolean jmxSwitch) {
+        throwsIfUnmodifiable();
+        if (jmxSwitch)
+            configuration.add(MetricsParameter.jmxSwitch);
+        else
+            configuration.remove(MetricsParameter.jmxSwitch);
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration selfInstrumentation(boolean selfInstrumentation) {
+        throwsIfUnmodifiable();
+        if (selfInstrumentation)
+            configuration.add(MetricsParameter.selfInstrumentation);
+        else
+            configuration.remove(MetricsParameter.selfInstrumentation);
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration reservoir(Class<? extends Reservoir> reservoir) {
+        throwsIfUnmodifiable();
+        if (reservoir == null)
+            throw new IllegalArgumentException("Reservoir type must not be null!");
+        this.reservoir = reservoir;
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration reporter(ScheduledReporter reporter, long period, TimeUnit unit) {
+        throwsIfUnmodifiable();
+        if (reporter == null)
+            throw new IllegalArgumentException("Reporter must not be null!");
+        if (period <= 0L)
+            throw new IllegalArgumentException("Reporting period must be positive!");
+        reporters.add(new ManagedReporter(reporter, period, unit));
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration timedSampling(int every) {
+        throwsIfUnmodifiable();
+        sampling = Sampling.every(every);
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration timedSamplingProbability(double probability) {
+        throwsIfUnmodifiable();
+        sampling = Sampling.probability(probability);
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration maxTagCombinations(int maxTagCombinations) {
+        throwsIfUnmodifiable();
+        if (maxTagCombinations < 1)
+            throw new IllegalArgumentException("Maximum number of tag combinations must be positive!");
+        this.maxTagCombinations = maxTagCombinations;
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration maxDynamicMetrics(int maxDynamicMetrics) {
+        throwsIfUnmodifiable();
+        if (maxDynamicMetrics < 1)
+            throw new IllegalArgumentException("Maximum number of dynamic metrics must be positive!");
+        this.maxDynamicMetrics = maxDynamicMetrics;
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration dynamicMetricsIdleTimeout(long timeout, TimeUnit unit) {
+        throwsIfUnmodifiable();
+        if (timeout < 0L)
+            throw new IllegalArgumentException("Dynamic metrics idle timeout must not be negative!");
+        this.dynamicMetricsIdleTimeout = unit.toNanos(timeout);
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration lazyMetricSetTimeout(long timeout, TimeUnit unit) {
+        throwsIfUnmodifiable();
+        if (timeout < 0L)
+            throw new IllegalArgumentException("Lazy metric set timeout must not be negative!");
+        this.lazyMetricSetTimeout = unit.toNanos(timeout);
+        return this;
+    }
+
     Set<MetricsParameter> getParameters() {
         return Collections.unmodifiableSet(configuration);
     }
 
+    Class<? extends Reservoir> getReservoir() {
+        return reservoir;
+    }
+
+    Sampling getSampling() {
+        return sampling;
+    }
+
+    int getMaxTagCombinations() {
+        return maxTagCombinations;
+    }
+
+    int getMaxDynamicMetrics() {
+        return maxDynamicMetrics;
+    }
+
+    long getDynamicMetricsIdleTimeout() {
+        return dynamicMetricsIdleTimeout;
+    }
+
+    long getLazyMetricSetTimeout() {
+        return lazyMetricSetTimeout;
+    }
+
+    List<ManagedReporter> getReporters() {
+        return Collections.unmodifiableList(reporters);
+    }
+
     void unmodifiable() {
         unmodifiable = true;
     }
@@ -18,6 +18,7 @@ package io.astefanutti.metrics.cdi;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.annotation.CachedGauge;
 import com.codahale.metrics.annotation.Counted;
 import com.codahale.metrics.annotation.ExceptionMetered;
@@ -28,26 +29,41 @@ import com.codahale.metrics.annotation.Timed;
 import javax.enterprise.event.Observes;
 import javax.enterprise.inject.spi.AfterBeanDiscovery;
 import javax.enterprise.inject.spi.AfterDeploymentValidation;
+import javax.enterprise.inject.spi.AnnotatedConstructor;
 import javax.enterprise.inject.spi.AnnotatedMember;
 import javax.enterprise.inject.spi.AnnotatedMethod;
 import javax.enterprise.inject.spi.AnnotatedType;
 import javax.enterprise.inject.spi.Bean;
 import javax.enterprise.inject.spi.BeanManager;
 import javax.enterprise.inject.spi.BeforeBeanDiscovery;
+import javax.enterprise.inject.spi.BeforeShutdown;
+import javax.enterprise.inject.spi.Decorator;
 import javax.enterprise.inject.spi.Extension;
+import javax.enterprise.inject.spi.Interceptor;
 import javax.enterprise.inject.spi.ProcessAnnotatedType;
+import javax.enterprise.inject.spi.ProcessInjectionTarget;
+import javax.enterprise.inject.spi.ProcessManagedBean;
 import javax.enterprise.inject.spi.ProcessProducerField;
 import javax.enterprise.inject.spi.ProcessProducerMethod;
 import javax.enterprise.inject.spi.WithAnnotations;
 import javax.enterprise.util.AnnotationLiteral;
 import javax.enterprise.util.Nonbinding;
+import javax.inject.Inject;
 import javax.interceptor.InterceptorBinding;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class MetricsExtension implements Extension {
 
@@ -59,12 +75,56 @@ public class MetricsExtension implements Extension {
 
     private final Map<Bean<?>, AnnotatedMember<?>> metrics = new HashMap<>();
 
+    private final Map<Bean<?>, AnnotatedMember<?>> metricSets = new HashMap<>();
+
+    private final Set<Constructor<?>> constructors = new HashSet<>();
+
     private final MetricsConfigurationEvent configuration = new MetricsConfigurationEvent();
 
+    private final MetricsIndex index = new MetricsIndex();
+
+    private final WeakTargetGauges weakGauges = new WeakTargetGauges();
+
+    private final SelfMetrics selfMetrics = new SelfMetrics();
+
+    private boolean switchRegistered;
+
     Set<MetricsParameter> getParameters() {
         return configuration.getParameters();
     }
 
+    Class<? extends Reservoir> getReservoir() {
+        return configuration.getReservoir();
+    }
+
+    Sampling getSampling() {
+        return configuration.getSampling();
+    }
+
+    int getMaxTagCombinations() {
+        return configuration.getMaxTagCombinations();
+    }
+
+    int getMaxDynamicMetrics() {
+        return configuration.getMaxDynamicMetrics();
+    }
+
+    long getDynamicMetricsIdleTimeout() {
+        return configuration.getDynamicMetricsIdleTimeout();
+    }
+
+    WeakTargetGauges getWeakGauges() {
+        return weakGauges;
+    }
+
+    SelfMetrics getSelfMetrics() {
+        return selfMetrics;
+    }
+
+    MetricsIndex getIndex() {
+        return index;
+    }
+
     private void addInterceptorBindings(@Observes BeforeBeanDiscovery bbd, BeanManager manager) {
         declareAsInterceptorBinding(Counted.class, manager, bbd);
         declareAsInterceptorBinding(ExceptionMetered.class, manager, bbd);
@@ -72,10 +132,50 @@ public class MetricsExtension implements Extension {
         declareAsInterceptorBinding(Timed.class, manager, bbd);
     }
 
+    private void loadIndex(@Observes BeforeBeanDiscovery bbd) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        // The index is loaded before the configuration event is fired so that its loading is always measured
+        long start = System.nanoTime();
+        try {
+            index.load(loader != null ? loader : MetricsExtension.class.getClassLoader());
+        } catch (IOException cause) {
+            throw new IllegalStateException("Unable to load metrics index [" + MetricsIndex.INDEX + "]", cause);
+        } finally {
+            selfMetrics.index.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
     private <X> void metricsAnnotations(@Observes @WithAnnotations({CachedGauge.class, Counted.class, ExceptionMetered.class, Gauge.class, Metered.class, Timed.class}) ProcessAnnotatedType<X> pat) {
         pat.setAnnotatedType(new AnnotatedTypeDecorator<>(pat.getAnnotatedType(), METRICS_BINDING));
     }
 
+    private <X> void metricsBean(@Observes ProcessManagedBean<X> pmb) {
+        // Skip the interceptors and decorators as the Metrics annotations are their bindings
+        AnnotatedType<X> type = pmb.getAnnotatedBeanClass();
+        if (!type.isAnnotationPresent(MetricsBinding.class) || pmb.getBean() instanceof Interceptor || pmb.getBean() instanceof Decorator)
+            return;
+
+        Constructor<X> constructor = beanConstructor(type);
+        if (constructor != null)
+            constructors.add(constructor);
+    }
+
+    private <X> void metricsInjectionTarget(@Observes ProcessInjectionTarget<X> pit) {
+        // Skip the interceptors as the Metrics annotations are their bindings.
+        // The configuration is only known after deployment validation so that only the types declaring
+        // gauges on instance methods get decorated, and the decorator is inert unless weak gauge targets are enabled.
+        AnnotatedType<X> type = pit.getAnnotatedType();
+        if (type.isAnnotationPresent(MetricsBinding.class) && !type.isAnnotationPresent(javax.interceptor.Interceptor.class) && hasInstanceGauges(type))
+            pit.setInjectionTarget(new InjectionTargetDecorator<>(pit.getInjectionTarget(), type.getJavaClass(), this));
+    }
+
+    private static boolean hasInstanceGauges(AnnotatedType<?> type) {
+        for (AnnotatedMethod<?> method : type.getMethods())
+            if (!method.isStatic() && (method.isAnnotationPresent(Gauge.class) || method.isAnnotationPresent(CachedGauge.class)))
+                return true;
+        return false;
+    }
+
     private void metricProducerField(@Observes ProcessProducerField<? extends Metric, ?> ppf) {
         metrics.put(ppf.getBean(), ppf.getAnnotatedProducerField());
     }
@@ -86,6 +186,18 @@ public class MetricsExtension implements Extension {
             metrics.put(ppm.getBean(), ppm.getAnnotatedProducerMethod());
     }
 
+    private void metricSetProducerField(@Observes ProcessProducerField<? extends MetricSet, ?> ppf) {
+        // Skip the metric registries as they are metric sets
+        if (!ppf.getBean().getTypes().contains(MetricRegistry.class))
+            metricSets.put(ppf.getBean(), ppf.getAnnotatedProducerField());
+    }
+
+    private void metricSetProducerMethod(@Observes ProcessProducerMethod<? extends MetricSet, ?> ppm) {
+        // Skip the metric registries as they are metric sets
+        if (!ppm.getBean().getTypes().contains(MetricRegistry.class))
+            metricSets.put(ppm.getBean(), ppm.getAnnotatedProducerMethod());
+    }
+
     private void defaultMetricRegistry(@Observes AfterBeanDiscovery abd, BeanManager manager) {
         if (manager.getBeans(MetricRegistry.class).isEmpty())
             abd.addBean(new MetricRegistryBean(manager));
@@ -96,18 +208,87 @@ public class MetricsExtension implements Extension {
         manager.fireEvent(configuration);
         configuration.unmodifiable();
 
+        if (configuration.getParameters().contains(MetricsParameter.selfInstrumentation))
+            selfMetrics.enable(configuration.getReservoir());
+
         // Produce and register custom metrics
+        long start = System.nanoTime();
         MetricRegistry registry = getReference(manager, MetricRegistry.class);
         MetricName name = getReference(manager, MetricName.class);
         for (Map.Entry<Bean<?>, AnnotatedMember<?>> bean : metrics.entrySet()) {
-            // TODO: add MetricSet metrics into the metric registry
+            // The metric sets are registered along with the other metric set producers
             if (bean.getKey().getTypes().contains(MetricSet.class))
                 continue;
-            registry.register(name.of(bean.getValue()), (Metric) getReference(manager, bean.getValue().getBaseType(), bean.getKey()));
+            registry.register(TaggedName.name(name.of(bean.getValue()), StaticTags.of(bean.getValue())), (Metric) getReference(manager, bean.getValue().getBaseType(), bean.getKey()));
         }
 
+        // Register the flattened metric sets prefixed with the name of their producer
+        for (Map.Entry<Bean<?>, AnnotatedMember<?>> bean : metricSets.entrySet())
+            MetricSets.register(registry, name.of(bean.getValue()), StaticTags.of(bean.getValue()), (MetricSet) getReference(manager, bean.getValue().getBaseType(), bean.getKey()), configuration.getLazyMetricSetTimeout());
+
         // Let's clear the collected metric producers
         metrics.clear();
+        metricSets.clear();
+        selfMetrics.producers.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        // Register the metrics of the managed beans before they get constructed
+        if (configuration.getParameters().contains(MetricsParameter.eagerRegistration)) {
+            start = System.nanoTime();
+            MetricsMetadata metadata = getReference(manager, MetricsMetadata.class);
+            InvocationPlans plans = getReference(manager, InvocationPlans.class);
+            for (Constructor<?> constructor : constructors) {
+                for (MetricsMetadata.MetricMember<?> metric : metadata.of(constructor).metrics) {
+                    // Names with expressions are resolved for each bean instance
+                    if (!metric.isStatic())
+                        continue;
+                    metadata.register(metric);
+                    plans.plan(metric);
+                }
+            }
+            selfMetrics.eagerRegistration.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        // Let's clear the collected bean constructors
+        constructors.clear();
+
+        if (selfMetrics.isEnabled())
+            MetricSets.register(registry, SelfMetrics.PREFIX, Collections.<String, String>emptyMap(), selfMetrics, 0L);
+
+        // Start the reporters once the metrics of the deployment are registered
+        if (!configuration.getReporters().isEmpty()) {
+            MetricsScheduler scheduler = getReference(manager, MetricsScheduler.class);
+            for (ManagedReporter reporter : configuration.getReporters())
+                reporter.start(scheduler, registry);
+        }
+
+        if (configuration.getParameters().contains(MetricsParameter.jmxSwitch))
+            registerSwitch(getReference(manager, MetricsSwitch.class));
+    }
+
+    private void stopReporters(@Observes BeforeShutdown shutdown) {
+        for (ManagedReporter reporter : configuration.getReporters())
+            reporter.stop();
+    }
+
+    private void unregisterSwitch(@Observes BeforeShutdown shutdown) {
+        if (!switchRegistered)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MetricsSwitch.OBJECT_NAME));
+        } catch (JMException cause) {
+            throw new IllegalStateException("Unable to unregister metrics switch MXBean [" + MetricsSwitch.OBJECT_NAME + "]", cause);
+        } finally {
+            switchRegistered = false;
+        }
+    }
+
+    private void registerSwitch(MetricsSwitch metricsSwitch) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(metricsSwitch, MetricsSwitch.class, true), new ObjectName(MetricsSwitch.OBJECT_NAME));
+            switchRegistered = true;
+        } catch (JMException cause) {
+            throw new IllegalStateException("Unable to register metrics switch MXBean [" + MetricsSwitch.OBJECT_NAME + "]", cause);
+        }
     }
 
     private static <T extends Annotation> void declareAsInterceptorBinding(Class<T> annotation, BeanManager manager, BeforeBeanDiscovery bbd) {
@@ -119,6 +300,18 @@ public class MetricsExtension implements Extension {
         bbd.addInterceptorBinding(new AnnotatedTypeDecorator<>(annotated, INTERCEPTOR_BINDING, methods));
     }
 
+    // The bean constructor is either the constructor annotated with @Inject or the default constructor
+    private static <X> Constructor<X> beanConstructor(AnnotatedType<X> type) {
+        Constructor<X> constructor = null;
+        for (AnnotatedConstructor<X> annotated : type.getConstructors()) {
+            if (annotated.isAnnotationPresent(Inject.class))
+                return annotated.getJavaMember();
+            if (annotated.getParameters().isEmpty())
+                constructor = annotated.getJavaMember();
+        }
+        return constructor;
+    }
+
     private static <T> T getReference(BeanManager manager, Class<T> type) {
         return getReference(manager, type, manager.resolve(manager.getBeans(type)));
     }
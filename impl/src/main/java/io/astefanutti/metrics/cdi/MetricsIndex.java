@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.inject.Vetoed;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+// The metric names generated at compile time by the Metrics CDI annotation processor.
+// Each line of the index contains the tab-separated declaring class binary name, member signature,
+// annotation simple name, metric name and metric absolute name.
+@Vetoed
+/* package-private */ final class MetricsIndex {
+
+    static final String INDEX = "META-INF/metrics-cdi.index";
+
+    // Indexed by declaring class name then by member signature and annotation type
+    private final Map<String, Map<String, String[]>> classes = new HashMap<>();
+
+    MetricsIndex() {
+    }
+
+    void load(ClassLoader loader) throws IOException {
+        Enumeration<URL> indexes = loader.getResources(INDEX);
+        while (indexes.hasMoreElements()) {
+            URL index = indexes.nextElement();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] entry = line.split("\t");
+                    if (entry.length != 5)
+                        continue;
+                    Map<String, String[]> members = classes.get(entry[0]);
+                    if (members == null) {
+                        members = new HashMap<>();
+                        classes.put(entry[0], members);
+                    }
+                    members.put(entry[1] + '\t' + entry[2], new String[]{entry[3], entry[4]});
+                }
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return classes.isEmpty();
+    }
+
+    // Returns null if the member metric is not indexed
+    String metricName(Member member, Class<? extends Annotation> type, boolean absolute) {
+        Map<String, String[]> members = classes.get(member.getDeclaringClass().getName());
+        if (members == null)
+            return null;
+
+        String[] names = members.get(signature(member) + '\t' + type.getSimpleName());
+        if (names == null)
+            return null;
+
+        return absolute ? names[1] : names[0];
+    }
+
+    private static String signature(Member member) {
+        Class<?>[] parameters;
+        StringBuilder signature = new StringBuilder();
+        if (member instanceof Constructor) {
+            signature.append("<init>");
+            parameters = ((Constructor<?>) member).getParameterTypes();
+        } else {
+            signature.append(member.getName());
+            parameters = ((Method) member).getParameterTypes();
+        }
+        signature.append('(');
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0)
+                signature.append(',');
+            // Local and anonymous classes do not have a canonical name and are not indexed
+            signature.append(parameters[i].getCanonicalName());
+        }
+        return signature.append(')').toString();
+    }
+}
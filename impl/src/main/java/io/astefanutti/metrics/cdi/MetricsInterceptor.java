@@ -15,22 +15,18 @@
  */
 package io.astefanutti.metrics.cdi;
 
+import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.annotation.CachedGauge;
-import com.codahale.metrics.annotation.Counted;
-import com.codahale.metrics.annotation.ExceptionMetered;
-import com.codahale.metrics.annotation.Gauge;
-import com.codahale.metrics.annotation.Metered;
-import com.codahale.metrics.annotation.Timed;
 
 import javax.annotation.Priority;
 import javax.inject.Inject;
 import javax.interceptor.AroundConstruct;
 import javax.interceptor.Interceptor;
 import javax.interceptor.InvocationContext;
-import java.lang.reflect.AnnotatedElement;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Member;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.concurrent.TimeUnit;
@@ -43,66 +39,98 @@ import java.util.concurrent.TimeUnit;
 
     private final MetricRegistry registry;
 
-    private final MetricResolver resolver;
+    private final MetricsMetadata metadata;
+
+    private final MetricsExtension extension;
+
+    private final MetricsScheduler scheduler;
 
     @Inject
-    private MetricsInterceptor(MetricRegistry registry, MetricResolver resolver) {
+    private MetricsInterceptor(MetricRegistry registry, MetricsMetadata metadata, MetricsExtension extension, MetricsScheduler scheduler) {
         this.registry = registry;
-        this.resolver = resolver;
+        this.metadata = metadata;
+        this.extension = extension;
+        this.scheduler = scheduler;
     }
 
     @AroundConstruct
     private Object metrics(InvocationContext context) throws Exception {
-        // Registers the present bean constructor metrics
-        registerMetrics(context.getConstructor());
-
-        // Registers the present methods metrics over the bean type hierarchy
-        Class<?> bean = context.getConstructor().getDeclaringClass();
-        do {
-            // TODO: discover annotations declared on implemented interfaces
-            for (Method method : bean.getDeclaredMethods())
-                if (!method.isSynthetic() && !Modifier.isPrivate(method.getModifiers()))
-                    registerMetrics(method);
-            bean = bean.getSuperclass();
-        } while (!Object.class.equals(bean));
+        MetricsMetadata.BeanType bean = metadata.of(context.getConstructor());
+
+        // Registers the present bean constructor and methods metrics over the bean type hierarchy
+        for (MetricsMetadata.MetricMember<?> metric : bean.metrics)
+            metadata.register(metric);
 
         Object target = context.proceed();
 
         // Registers the present gauges over the bean type hierarchy after the target is constructed as it is required for the gauge invocations
-        bean = context.getConstructor().getDeclaringClass();
-        do {
-            // TODO: discover annotations declared on implemented interfaces
-            for (Method method : bean.getDeclaredMethods()) {
-                MetricResolver.Of<CachedGauge> cachedGauge = resolver.cachedGauge(method);
-                if (cachedGauge.isPresent())
-                    registry.register(cachedGauge.metricName(), new CachingGauge(new ForwardingGauge(method, context.getTarget()), cachedGauge.metricAnnotation().timeout(), cachedGauge.metricAnnotation().timeoutUnit()));
-    
-                MetricResolver.Of<Gauge> gauge = resolver.gauge(method);
-                if (gauge.isPresent())
-                    registry.register(gauge.metricName(), new ForwardingGauge(method, context.getTarget()));
-            }
-            bean = bean.getSuperclass();
-        } while (!Object.class.equals(bean));
+        for (MetricsMetadata.MetricMember<?> gauge : bean.gauges)
+            registerGauge(gauge, context.getConstructor().getDeclaringClass(), context.getTarget());
 
         return target;
     }
 
-    private <E extends Member & AnnotatedElement> void registerMetrics(E element) {
-        MetricResolver.Of<Counted> counted = resolver.counted(element);
-        if (counted.isPresent())
-            registry.counter(counted.metricName());
+    private void registerGauge(MetricsMetadata.MetricMember<?> gauge, Class<?> bean, Object target) {
+        Method method = (Method) gauge.element;
+        MetricResolver.Of<?> of = gauge.resolve();
+        if (extension.getParameters().contains(MetricsParameter.weakGaugeTargets) && !Modifier.isStatic(method.getModifiers())) {
+            extension.getWeakGauges().add(bean, registerWeakGauge(of, method, target));
+        } else if (CachedGauge.class.equals(gauge.type)) {
+            registerCachedGauge(of.metricName(), forwardingGauge(method, target), (CachedGauge) of.metricAnnotation());
+        } else {
+            registry.register(of.metricName(), forwardingGauge(method, target));
+        }
+    }
+
+    // Adds the target to the weak gauge registered with that name or registers a new one
+    private WeakTargetGauge registerWeakGauge(MetricResolver.Of<?> of, Method method, Object target) {
+        String name = of.metricName();
+        while (true) {
+            WeakTargetGauge gauge = weakGauge(name);
+            if (gauge != null) {
+                if (gauge.add(target))
+                    return gauge;
+                // The gauge has been unregistered in the meantime
+                continue;
+            }
+
+            gauge = new WeakTargetGauge(name, registry, method);
+            gauge.add(target);
+            try {
+                if (of.metricAnnotation() instanceof CachedGauge) {
+                    registerCachedGauge(name, gauge, (CachedGauge) of.metricAnnotation());
+                } else {
+                    registry.register(name, gauge);
+                }
+                return gauge;
+            } catch (IllegalArgumentException cause) {
+                // The gauge may have been registered concurrently
+                if (!registry.getMetrics().containsKey(name))
+                    throw cause;
+            }
+        }
+    }
 
-        MetricResolver.Of<ExceptionMetered> exceptionMetered = resolver.exceptionMetered(element);
-        if (exceptionMetered.isPresent())
-            registry.meter(exceptionMetered.metricName());
+    private WeakTargetGauge weakGauge(String name) {
+        Metric metric = registry.getMetrics().get(name);
+        if (metric instanceof CachingGauge)
+            metric = ((CachingGauge) metric).gauge;
+        else if (metric instanceof RefreshAheadGauge)
+            metric = ((RefreshAheadGauge) metric).gauge;
+        if (metric == null || metric instanceof WeakTargetGauge)
+            return (WeakTargetGauge) metric;
 
-        MetricResolver.Of<Metered> metered = resolver.metered(element);
-        if (metered.isPresent())
-            registry.meter(metered.metricName());
+        throw new IllegalArgumentException("A metric named " + name + " already exists");
+    }
 
-        MetricResolver.Of<Timed> timed = resolver.timed(element);
-        if (timed.isPresent())
-            registry.timer(timed.metricName());
+    private void registerCachedGauge(String name, com.codahale.metrics.Gauge<?> gauge, CachedGauge cachedGauge) {
+        if (extension.getParameters().contains(MetricsParameter.refreshAheadCachedGauges)) {
+            RefreshAheadGauge refreshAheadGauge = new RefreshAheadGauge(name, gauge, registry);
+            registry.register(name, refreshAheadGauge);
+            refreshAheadGauge.schedule(scheduler, cachedGauge.timeout(), cachedGauge.timeoutUnit());
+        } else {
+            registry.register(name, new CachingGauge(gauge, cachedGauge.timeout(), cachedGauge.timeoutUnit()));
+        }
     }
 
     private static final class CachingGauge extends com.codahale.metrics.CachedGauge<Object> {
@@ -120,29 +148,84 @@ import java.util.concurrent.TimeUnit;
         }
     }
 
-    private static final class ForwardingGauge implements com.codahale.metrics.Gauge<Object> {
+    private static ForwardingGauge forwardingGauge(Method method, Object target) {
+        method.setAccessible(true);
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException cause) {
+            throw new IllegalStateException("Unable to access method [" + method + "]", cause);
+        }
+        if (!Modifier.isStatic(method.getModifiers()))
+            handle = handle.bindTo(target);
+
+        Class<?> type = method.getReturnType();
+        if (type == byte.class || type == short.class || type == int.class || type == long.class)
+            return new LongForwardingGauge(method, handle);
+        else if (type == float.class || type == double.class)
+            return new DoubleForwardingGauge(method, handle);
+        else
+            return new ForwardingGauge(method, handle);
+    }
+
+    // The method handle is bound to the target instance so that the gauge invocations
+    // do not go through reflection access checks nor arguments array allocation
+    private static class ForwardingGauge implements com.codahale.metrics.Gauge<Object> {
 
-        private final Method method;
+        final Method method;
 
-        private final Object object;
+        private final MethodHandle handle;
 
-        private ForwardingGauge(Method method, Object object) {
+        private ForwardingGauge(Method method, MethodHandle handle) {
             this.method = method;
-            this.object = object;
-            method.setAccessible(true);
+            this.handle = handle.asType(MethodType.methodType(Object.class));
         }
 
         @Override
         public Object getValue() {
-            return invokeMethod(method, object);
+            try {
+                return handle.invokeExact();
+            } catch (Throwable cause) {
+                throw new IllegalStateException("Error while calling method [" + method + "]", cause);
+            }
         }
     }
 
-    private static Object invokeMethod(Method method, Object object) {
-        try {
-            return method.invoke(object);
-        } catch (IllegalAccessException | InvocationTargetException cause) {
-            throw new IllegalStateException("Error while calling method [" + method + "]", cause);
+    private static final class LongForwardingGauge extends ForwardingGauge implements LongGauge {
+
+        private final MethodHandle handle;
+
+        private LongForwardingGauge(Method method, MethodHandle handle) {
+            super(method, handle);
+            this.handle = handle.asType(MethodType.methodType(long.class));
+        }
+
+        @Override
+        public long getLongValue() {
+            try {
+                return (long) handle.invokeExact();
+            } catch (Throwable cause) {
+                throw new IllegalStateException("Error while calling method [" + method + "]", cause);
+            }
+        }
+    }
+
+    private static final class DoubleForwardingGauge extends ForwardingGauge implements DoubleGauge {
+
+        private final MethodHandle handle;
+
+        private DoubleForwardingGauge(Method method, MethodHandle handle) {
+            super(method, handle);
+            this.handle = handle.asType(MethodType.methodType(double.class));
+        }
+
+        @Override
+        public double getDoubleValue() {
+            try {
+                return (double) handle.invokeExact();
+            } catch (Throwable cause) {
+                throw new IllegalStateException("Error while calling method [" + method + "]", cause);
+            }
         }
     }
 }
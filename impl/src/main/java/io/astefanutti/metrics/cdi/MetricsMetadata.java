@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.annotation.CachedGauge;
+import com.codahale.metrics.annotation.Counted;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Gauge;
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Discovers once per bean constructor the metrics declared over the bean type hierarchy
+// so that subsequent constructions do not have to walk the hierarchy reflectively.
+@ApplicationScoped
+/* package-private */ class MetricsMetadata {
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private MetricResolver resolver;
+
+    @Inject
+    private Reservoirs reservoirs;
+
+    @Inject
+    private DynamicMetrics dynamic;
+
+    @Inject
+    private MetricsExtension extension;
+
+    private final ConcurrentMap<Constructor<?>, BeanType> types = new ConcurrentHashMap<>();
+
+    BeanType of(Constructor<?> constructor) {
+        BeanType type = types.get(constructor);
+        if (type == null) {
+            SelfMetrics self = extension.getSelfMetrics();
+            long start = self.start();
+            type = discover(constructor);
+            self.stop(self.discoveries, start);
+            BeanType previous = types.putIfAbsent(constructor, type);
+            if (previous != null)
+                type = previous;
+        }
+        return type;
+    }
+
+    void register(MetricMember<?> metric) {
+        // Metrics tagged with parameter values are registered on invocation
+        if (metric.hasParameterTags())
+            return;
+
+        String name = metric.resolve().metricName();
+        if (!metric.isStatic())
+            registerDynamic(metric, name);
+        else if (Counted.class.equals(metric.type))
+            registry.counter(name);
+        else if (ExceptionMetered.class.equals(metric.type) || Metered.class.equals(metric.type))
+            registry.meter(name);
+        else if (Timed.class.equals(metric.type))
+            timer(metric.element, name);
+    }
+
+    // Metrics whose name contains expressions are registered through the guard
+    private void registerDynamic(MetricMember<?> metric, String name) {
+        Object declaration = DynamicMetrics.declaration(metric.element, metric.type);
+        if (Counted.class.equals(metric.type))
+            dynamic.counter(declaration, name);
+        else if (ExceptionMetered.class.equals(metric.type) || Metered.class.equals(metric.type))
+            dynamic.meter(declaration, name);
+        else if (Timed.class.equals(metric.type))
+            dynamic.timer(declaration, name, metric.element);
+    }
+
+    private void timer(Member element, String name) {
+        reservoirs.timer(name, element);
+    }
+
+    private BeanType discover(Constructor<?> constructor) {
+        List<MetricMember<?>> metrics = new ArrayList<>();
+        List<MetricMember<?>> gauges = new ArrayList<>();
+
+        // Discovers the present bean constructor metrics
+        addMetrics(metrics, constructor);
+
+        // Discovers the present methods metrics over the bean type hierarchy
+        Class<?> bean = constructor.getDeclaringClass();
+        do {
+            // TODO: discover annotations declared on implemented interfaces
+            for (Method method : bean.getDeclaredMethods()) {
+                if (!method.isSynthetic() && !Modifier.isPrivate(method.getModifiers()))
+                    addMetrics(metrics, method);
+                addMetric(gauges, method, CachedGauge.class);
+                addMetric(gauges, method, Gauge.class);
+            }
+            bean = bean.getSuperclass();
+        } while (!Object.class.equals(bean));
+
+        return new BeanType(metrics, gauges);
+    }
+
+    private <E extends Member & AnnotatedElement> void addMetrics(List<MetricMember<?>> metrics, E element) {
+        addMetric(metrics, element, Counted.class);
+        addMetric(metrics, element, ExceptionMetered.class);
+        addMetric(metrics, element, Metered.class);
+        addMetric(metrics, element, Timed.class);
+    }
+
+    private <E extends Member & AnnotatedElement, T extends Annotation> void addMetric(List<MetricMember<?>> metrics, E element, Class<T> type) {
+        MetricResolver.Of<T> of = resolver.resolverOf(element, type);
+        if (of.isPresent())
+            metrics.add(new MetricMember<>(element, type, of));
+    }
+
+    static final class BeanType {
+
+        // The counters, meters and timers declared over the bean type hierarchy
+        final List<MetricMember<?>> metrics;
+
+        // The gauges to bind to each bean instance once constructed
+        final List<MetricMember<?>> gauges;
+
+        private BeanType(List<MetricMember<?>> metrics, List<MetricMember<?>> gauges) {
+            this.metrics = Collections.unmodifiableList(metrics);
+            this.gauges = Collections.unmodifiableList(gauges);
+        }
+    }
+
+    final class MetricMember<T extends Annotation> {
+
+        final Member element;
+
+        final Class<T> type;
+
+        private final MetricResolver.Of<T> of;
+
+        private <E extends Member & AnnotatedElement> MetricMember(E element, Class<T> type, MetricResolver.Of<T> of) {
+            this.element = element;
+            this.type = type;
+            this.of = of;
+        }
+
+        boolean isStatic() {
+            return of.isStatic();
+        }
+
+        boolean hasParameterTags() {
+            return of.hasParameterTags();
+        }
+
+        // Names with expressions are resolved again for each bean instance
+        MetricResolver.Of<T> resolve() {
+            if (of.isStatic())
+                return of;
+            else if (element instanceof Method)
+                return resolver.resolverOf((Method) element, type);
+            else
+                return resolver.resolverOf((Constructor<?>) element, type);
+        }
+    }
+}
@@ -18,5 +18,15 @@ package io.astefanutti.metrics.cdi;
 
 /* package-private */ enum MetricsParameter {
 
-    useAbsoluteName
+    useAbsoluteName,
+
+    eagerRegistration,
+
+    weakGaugeTargets,
+
+    refreshAheadCachedGauges,
+
+    jmxSwitch,
+
+    selfInstrumentation
 }
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The bounded scheduler shared by the Metrics CDI background tasks, shut down along with the application.
+// The refreshes of the cached gauges run the user gauge methods, that may be slow, so that they get their own
+// bounded executor to not delay the reporters and the eviction of the dynamic metrics.
+@ApplicationScoped
+/* package-private */ class MetricsScheduler {
+
+    private static final int THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private ScheduledThreadPoolExecutor executor;
+
+    private ScheduledThreadPoolExecutor refreshExecutor;
+
+    @PostConstruct
+    private void createExecutor() {
+        executor = new ScheduledThreadPoolExecutor(THREADS, new SchedulerThreadFactory("metrics-cdi-scheduler-"));
+        executor.setRemoveOnCancelPolicy(true);
+        refreshExecutor = new ScheduledThreadPoolExecutor(THREADS, new SchedulerThreadFactory("metrics-cdi-refresh-"));
+        refreshExecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    private void shutdownExecutor() {
+        executor.shutdownNow();
+        refreshExecutor.shutdownNow();
+    }
+
+    ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(task, initialDelay, delay, unit);
+    }
+
+    ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return executor.scheduleAtFixedRate(task, initialDelay, period, unit);
+    }
+
+    // Refreshes of a same gauge do not overlap as the next one is scheduled once the previous one completes
+    ScheduledFuture<?> scheduleRefresh(Runnable refresh, long delay, TimeUnit unit) {
+        return refreshExecutor.scheduleWithFixedDelay(refresh, 0L, delay, unit);
+    }
+
+    private static final class SchedulerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private final String prefix;
+
+        private SchedulerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
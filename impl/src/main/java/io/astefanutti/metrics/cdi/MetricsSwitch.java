@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.management.MXBean;
+import java.util.Set;
+
+/**
+ * Enables or disables at runtime the metrics updated by the Metrics CDI interceptors, i.e. the metrics declared with
+ * the {@code @Counted}, {@code @ExceptionMetered}, {@code @Metered} and {@code @Timed} annotations. The interceptors
+ * of a disabled metric proceed with the invocation without updating it.
+ *
+ * It can be injected in the application, and registered as an MXBean with the
+ * {@value #OBJECT_NAME} object name using {@link MetricsConfiguration#jmxSwitch(boolean)}.
+ *
+ * A metric is disabled when its name, or the name without its tags for tagged metrics, has been disabled
+ * or starts with a prefix that has been disabled. All the metrics are enabled by default.
+ */
+@MXBean
+public interface MetricsSwitch {
+
+    /**
+     * The object name of the switch MXBean.
+     */
+    String OBJECT_NAME = "io.astefanutti.metrics.cdi:type=MetricsSwitch";
+
+    /**
+     * Disables the metric with the given name.
+     *
+     * @param name the metric name
+     */
+    void disable(String name);
+
+    /**
+     * Enables the metric with the given name, that remains disabled if its name starts with a disabled prefix.
+     *
+     * @param name the metric name
+     */
+    void enable(String name);
+
+    /**
+     * Disables the metrics whose name starts with the given prefix.
+     *
+     * @param prefix the metric name prefix
+     */
+    void disablePrefix(String prefix);
+
+    /**
+     * Enables the metrics whose name starts with the given prefix, that remain disabled if their name
+     * has been disabled or starts with another disabled prefix.
+     *
+     * @param prefix the metric name prefix
+     */
+    void enablePrefix(String prefix);
+
+    /**
+     * @param name the metric name
+     * @return whether the metric with the given name is enabled
+     */
+    boolean isEnabled(String name);
+
+    /**
+     * @return the names of the disabled metrics
+     */
+    Set<String> getDisabledNames();
+
+    /**
+     * @return the disabled metric name prefixes
+     */
+    Set<String> getDisabledPrefixes();
+}
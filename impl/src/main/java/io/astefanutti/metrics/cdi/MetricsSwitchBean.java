@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+// Holds the switch state and applies it to the cached invocation plans on each toggle,
+// so that the interceptors only read the flag of their plan
+@ApplicationScoped
+/* package-private */ class MetricsSwitchBean implements MetricsSwitch {
+
+    @Inject
+    private InvocationPlans plans;
+
+    private final Set<String> names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final Set<String> prefixes = new CopyOnWriteArraySet<>();
+
+    @Override
+    public void disable(String name) {
+        if (names.add(name))
+            plans.toggle();
+    }
+
+    @Override
+    public void enable(String name) {
+        if (names.remove(name))
+            plans.toggle();
+    }
+
+    @Override
+    public void disablePrefix(String prefix) {
+        if (prefixes.add(prefix))
+            plans.toggle();
+    }
+
+    @Override
+    public void enablePrefix(String prefix) {
+        if (prefixes.remove(prefix))
+            plans.toggle();
+    }
+
+    @Override
+    public boolean isEnabled(String name) {
+        if (names.isEmpty() && prefixes.isEmpty())
+            return true;
+        if (names.contains(name))
+            return false;
+        for (String prefix : prefixes)
+            if (name.startsWith(prefix))
+                return false;
+        // The tags are not part of the names disabled for tagged metrics
+        return name.indexOf('{') < 0 || !names.contains(TaggedName.of(name).getName());
+    }
+
+    @Override
+    public Set<String> getDisabledNames() {
+        return Collections.unmodifiableSet(new TreeSet<>(names));
+    }
+
+    @Override
+    public Set<String> getDisabledPrefixes() {
+        return Collections.unmodifiableSet(new TreeSet<>(prefixes));
+    }
+}
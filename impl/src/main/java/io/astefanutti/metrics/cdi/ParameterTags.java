@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Metric;
+
+import javax.enterprise.inject.Vetoed;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Resolves the metrics of an intercepted member tagged with the values of its arguments annotated with @MetricTag.
+// A metric is registered and cached for each distinct combination of argument values, in a tree of maps with a level
+// per tag keyed by the argument values themselves, so that the steady-state lookups neither allocate nor build any
+// metric name. Arguments of classes that do not override Object.equals, and collections and maps that are usually
+// mutable, are keyed by their string representation so that distinct instances with the same representation share
+// the same metric. The combinations beyond the limit are all recorded
+// in a single overflow metric. Each lookup marks the metric as used so that it is not evicted while in use.
+@Vetoed
+/* package-private */ final class ParameterTags<M extends Metric> {
+
+    // The key of the null arguments as concurrent maps do not support null keys
+    private static final Object NULL = new Object();
+
+    // Whether the arguments of a class can key the combinations, computed once per class
+    private static final ClassValue<Boolean> KEYS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            if (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type))
+                return false;
+            try {
+                return !Object.class.equals(type.getMethod("equals", Object.class).getDeclaringClass());
+            } catch (NoSuchMethodException cause) {
+                return false;
+            }
+        }
+    };
+
+    private final String name;
+
+    private final SortedMap<String, String> tags;
+
+    private final int[] positions;
+
+    private final String[] keys;
+
+    private final int max;
+
+    private final MetricFactory<M> factory;
+
+    // The inner nodes are maps and the leaves hold the metrics
+    private final ConcurrentMap<Object, Object> metrics = new ConcurrentHashMap<>();
+
+    // The number of registered metrics, excluding the overflow metric
+    private final AtomicInteger size = new AtomicInteger();
+
+    // The registered metrics and the combination keys leading to them by metric name, guarded by this
+    private final Map<String, Leaf<M>> names = new HashMap<>();
+
+    private final Map<String, List<Object[]>> combinations = new HashMap<>();
+
+    private volatile Leaf<M> overflow;
+
+    // Guarded by this
+    private String overflowName;
+
+    ParameterTags(String name, Member member, int max, MetricFactory<M> factory) {
+        TaggedName tagged = TaggedName.of(name);
+        this.name = tagged.getName();
+        this.tags = tagged.getTags();
+        this.max = max;
+        this.factory = factory;
+
+        Annotation[][] annotations = parameterAnnotations(member);
+        int count = 0;
+        for (Annotation[] parameter : annotations)
+            if (tag(parameter) != null)
+                count++;
+        positions = new int[count];
+        keys = new String[count];
+        for (int i = 0, j = 0; i < annotations.length; i++) {
+            MetricTag tag = tag(annotations[i]);
+            if (tag != null) {
+                positions[j] = i;
+                keys[j++] = tag.key();
+            }
+        }
+    }
+
+    static boolean isPresent(Member member) {
+        for (Annotation[] parameter : parameterAnnotations(member))
+            if (tag(parameter) != null)
+                return true;
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    M metric(Object[] arguments) {
+        Object node = metrics;
+        for (int i = 0; i < positions.length && node != null; i++)
+            node = ((ConcurrentMap<Object, Object>) node).get(key(arguments[positions[i]]));
+        if (node != null)
+            return ((Leaf<M>) node).use();
+
+        // Avoids contending on the registration once the limit is reached
+        Leaf<M> overflow = this.overflow;
+        if (overflow != null && size.get() >= max)
+            return overflow.use();
+
+        return register(arguments).use();
+    }
+
+    synchronized void evict(String name) {
+        List<Object[]> evicted = combinations.remove(name);
+        if (evicted != null) {
+            names.remove(name);
+            size.decrementAndGet();
+            for (Object[] combination : evicted)
+                remove(metrics, combination, 0);
+        } else if (name.equals(overflowName)) {
+            overflow = null;
+            overflowName = null;
+        }
+    }
+
+    // Removes the leaf of the combination along with the inner nodes left empty, guarded by this
+    @SuppressWarnings("unchecked")
+    private static void remove(ConcurrentMap<Object, Object> node, Object[] combination, int level) {
+        if (level == combination.length - 1) {
+            node.remove(combination[level]);
+            return;
+        }
+        ConcurrentMap<Object, Object> child = (ConcurrentMap<Object, Object>) node.get(combination[level]);
+        if (child != null) {
+            remove(child, combination, level + 1);
+            if (child.isEmpty())
+                node.remove(combination[level], child);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized Leaf<M> register(Object[] arguments) {
+        Object[] combination = new Object[positions.length];
+        for (int i = 0; i < positions.length; i++)
+            combination[i] = key(arguments[positions[i]]);
+
+        Object node = metrics;
+        for (int i = 0; i < combination.length && node != null; i++)
+            node = ((ConcurrentMap<Object, Object>) node).get(combination[i]);
+        if (node != null)
+            return (Leaf<M>) node;
+
+        String[] values = new String[combination.length];
+        for (int i = 0; i < combination.length; i++)
+            values[i] = combination[i] == NULL ? "null" : combination[i].toString();
+        String name = name(values);
+
+        // Distinct keys may have the same string representation, e.g. an Integer and a Long
+        Leaf<M> leaf = names.get(name);
+        if (leaf == null) {
+            // The slot is reserved before registering the metric so that the limit is never exceeded
+            if (size.incrementAndGet() > max) {
+                size.decrementAndGet();
+                return overflow();
+            }
+            leaf = new Leaf<>(factory.metric(name), factory.activity(name));
+            names.put(name, leaf);
+            combinations.put(name, new ArrayList<Object[]>(1));
+        }
+        combinations.get(name).add(combination);
+
+        ConcurrentMap<Object, Object> parent = metrics;
+        for (int i = 0; i < combination.length - 1; i++) {
+            ConcurrentMap<Object, Object> child = (ConcurrentMap<Object, Object>) parent.get(combination[i]);
+            if (child == null) {
+                child = new ConcurrentHashMap<>();
+                parent.put(combination[i], child);
+            }
+            parent = child;
+        }
+        parent.put(combination[combination.length - 1], leaf);
+        return leaf;
+    }
+
+    // Guarded by this
+    private Leaf<M> overflow() {
+        if (overflow == null) {
+            String[] values = new String[keys.length];
+            Arrays.fill(values, TaggedName.OVERFLOW);
+            overflowName = name(values);
+            overflow = new Leaf<>(factory.metric(overflowName), factory.activity(overflowName));
+        }
+        return overflow;
+    }
+
+    private static Object key(Object argument) {
+        if (argument == null)
+            return NULL;
+        if (argument instanceof String || argument instanceof Enum || KEYS.get(argument.getClass()))
+            return argument;
+        return String.valueOf(argument);
+    }
+
+    private String name(String[] values) {
+        SortedMap<String, String> tags = new TreeMap<>(this.tags);
+        for (int i = 0; i < keys.length; i++)
+            tags.put(keys[i], values[i]);
+        return TaggedName.name(name, tags);
+    }
+
+    private static Annotation[][] parameterAnnotations(Member member) {
+        if (member instanceof Method)
+            return ((Method) member).getParameterAnnotations();
+        else
+            return ((Constructor<?>) member).getParameterAnnotations();
+    }
+
+    private static MetricTag tag(Annotation[] annotations) {
+        for (Annotation annotation : annotations)
+            if (annotation instanceof MetricTag)
+                return (MetricTag) annotation;
+        return null;
+    }
+
+    private static final class Leaf<M extends Metric> {
+
+        private final M metric;
+
+        // Null unless the metric is tracked for idle eviction
+        private final DynamicMetrics.Activity activity;
+
+        private Leaf(M metric, DynamicMetrics.Activity activity) {
+            this.metric = metric;
+            this.activity = activity;
+        }
+
+        M use() {
+            if (activity != null)
+                activity.use();
+            return metric;
+        }
+    }
+}
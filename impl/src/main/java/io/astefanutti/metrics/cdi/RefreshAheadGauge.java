@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import javax.enterprise.inject.Vetoed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// A cached gauge whose value is recomputed periodically by the Metrics CDI refresh executor so that readers
+// always get the last computed value without blocking. The duration of the refreshes and their failures
+// are registered as a timer and a meter named after the gauge, once the gauge is registered. The value is null until
+// the first refresh completes.
+@Vetoed
+/* package-private */ final class RefreshAheadGauge implements Gauge<Object>, Runnable {
+
+    final Gauge<?> gauge;
+
+    private final String name;
+
+    private final MetricRegistry registry;
+
+    // Set before the first refresh is scheduled
+    private Timer refresh;
+
+    private Meter failures;
+
+    private volatile Object value;
+
+    private volatile ScheduledFuture<?> future;
+
+    private volatile boolean cancelled;
+
+    RefreshAheadGauge(String name, Gauge<?> gauge, MetricRegistry registry) {
+        this.name = name;
+        this.gauge = gauge;
+        this.registry = registry;
+    }
+
+    // Must be called once the gauge is registered so that its refresh metrics are not left registered on failure
+    void schedule(MetricsScheduler scheduler, long timeout, TimeUnit timeoutUnit) {
+        refresh = registry.timer(refreshName(name));
+        failures = registry.meter(failuresName(name));
+        future = scheduler.scheduleRefresh(this, timeout, timeoutUnit);
+        // The gauge may have been removed before the first refresh
+        if (cancelled)
+            future.cancel(false);
+    }
+
+    @Override
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public void run() {
+        // Stops refreshing once the gauge has been removed from the registry
+        if (registry.getMetrics().get(name) != this) {
+            cancel();
+            return;
+        }
+
+        Timer.Context time = refresh.time();
+        try {
+            value = gauge.getValue();
+        } catch (Throwable cause) {
+            // Keep the last value and retry on the next refresh, as any throwable would cancel the periodic refresh
+            failures.mark();
+            if (cause instanceof VirtualMachineError)
+                throw (VirtualMachineError) cause;
+        } finally {
+            time.stop();
+        }
+    }
+
+    private void cancel() {
+        cancelled = true;
+        if (future != null)
+            future.cancel(false);
+        registry.remove(refreshName(name));
+        registry.remove(failuresName(name));
+    }
+
+    private static String refreshName(String name) {
+        return MetricRegistry.name(name, "refresh");
+    }
+
+    private static String failuresName(String name) {
+        return MetricRegistry.name(name, "refresh", "failures");
+    }
+}
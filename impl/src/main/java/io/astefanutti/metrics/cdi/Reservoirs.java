@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.spi.InjectionPoint;
+import javax.inject.Inject;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Member;
+
+// Gets or registers the timers and histograms with the type of reservoir selected for each metric
+@ApplicationScoped
+/* package-private */ class Reservoirs {
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private MetricsExtension extension;
+
+    Class<? extends Reservoir> reservoirOf(InjectionPoint ip) {
+        MetricReservoir reservoir = ip.getAnnotated() != null ? ip.getAnnotated().getAnnotation(MetricReservoir.class) : null;
+        return reservoir != null ? reservoir.value() : extension.getReservoir();
+    }
+
+    // The reservoir type can be declared on the bean class along with a class level metrics annotation
+    Class<? extends Reservoir> reservoirOf(Member element) {
+        MetricReservoir reservoir = ((AnnotatedElement) element).getAnnotation(MetricReservoir.class);
+        if (reservoir == null)
+            reservoir = element.getDeclaringClass().getAnnotation(MetricReservoir.class);
+        return reservoir != null ? reservoir.value() : extension.getReservoir();
+    }
+
+    // The sampling can be declared on the bean class along with a class level @Timed annotation
+    Sampling samplingOf(Member element) {
+        MetricSampling sampling = ((AnnotatedElement) element).getAnnotation(MetricSampling.class);
+        if (sampling == null)
+            sampling = element.getDeclaringClass().getAnnotation(MetricSampling.class);
+        return sampling != null ? Sampling.of(sampling) : extension.getSampling();
+    }
+
+    Histogram histogram(String name, Class<? extends Reservoir> type) {
+        if (ExponentiallyDecayingReservoir.class.equals(type))
+            return registry.histogram(name);
+
+        Metric metric = registry.getMetrics().get(name);
+        return metric != null ? checkType(name, metric, Histogram.class) : register(name, new Histogram(reservoir(type)), Histogram.class);
+    }
+
+    Timer timer(String name, Class<? extends Reservoir> type) {
+        if (ExponentiallyDecayingReservoir.class.equals(type))
+            return registry.timer(name);
+
+        Metric metric = registry.getMetrics().get(name);
+        return metric != null ? checkType(name, metric, Timer.class) : register(name, new Timer(reservoir(type)), Timer.class);
+    }
+
+    // Gets or registers the timer of a timed constructor or method with the reservoir type and sampling declared for it
+    Timer timer(String name, Member element) {
+        Sampling sampling = samplingOf(element);
+        if (!sampling.isEnabled())
+            return timer(name, reservoirOf(element));
+
+        Metric metric = registry.getMetrics().get(name);
+        return metric != null ? checkType(name, metric, Timer.class) : register(name, new SampledTimer(reservoir(reservoirOf(element)), sampling), Timer.class);
+    }
+
+    private <T extends Metric> T register(String name, T metric, Class<T> type) {
+        try {
+            return registry.register(name, metric);
+        } catch (IllegalArgumentException cause) {
+            // The metric may have been registered concurrently
+            Metric registered = registry.getMetrics().get(name);
+            if (registered == null)
+                throw cause;
+            return checkType(name, registered, type);
+        }
+    }
+
+    private static <T extends Metric> T checkType(String name, Metric metric, Class<T> type) {
+        if (type.isInstance(metric))
+            return type.cast(metric);
+
+        throw new IllegalArgumentException(name + " is already used for a different type of metric");
+    }
+
+    static Reservoir reservoir(Class<? extends Reservoir> type) {
+        try {
+            return type.newInstance();
+        } catch (InstantiationException | IllegalAccessException | LinkageError cause) {
+            throw new IllegalStateException("Unable to instantiate reservoir [" + type.getName() + "]", cause);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+
+import javax.enterprise.inject.Vetoed;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A timer that only times a sample of the invocations while counting all of them. The count and the rates
+// reflect all the invocations, the rate meter being marked lazily with the invocations counted since it was
+// last marked, while the reservoir only contains the durations of the sampled invocations, which does not bias
+// the snapshot statistics.
+@Vetoed
+/* package-private */ final class SampledTimer extends Timer {
+
+    private final int every;
+
+    private final double probability;
+
+    // The per-thread invocations count for fixed interval sampling, so that the threads do not contend on a shared
+    // sequence to select the invocations to time. Each thread times its first invocation and then one every interval.
+    private final ThreadLocal<int[]> sequence = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    // The invocations count, contention-free
+    private final Counter invocations = new Counter();
+
+    private final Meter meter = new Meter();
+
+    private final AtomicLong marked = new AtomicLong();
+
+    SampledTimer(Reservoir reservoir, Sampling sampling) {
+        super(reservoir);
+        this.every = sampling.every;
+        this.probability = sampling.probability;
+    }
+
+    // Counts an invocation and returns whether that invocation has to be timed
+    boolean sample() {
+        invocations.inc();
+        if (every > 1) {
+            int[] count = sequence.get();
+            if (count[0] == every)
+                count[0] = 0;
+            return count[0]++ == 0;
+        }
+
+        return ThreadLocalRandom.current().nextDouble() < probability;
+    }
+
+    // Records the duration of an invocation sampled beforehand
+    void record(long duration) {
+        super.update(duration, TimeUnit.NANOSECONDS);
+        mark();
+    }
+
+    // Durations recorded directly are counted as sampled invocations
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        invocations.inc();
+        super.update(duration, unit);
+        mark();
+    }
+
+    @Override
+    public <T> T time(Callable<T> event) throws Exception {
+        Context context = time();
+        try {
+            return event.call();
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return invocations.getCount();
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        mark();
+        return meter.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        mark();
+        return meter.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate() {
+        mark();
+        return meter.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        mark();
+        return meter.getOneMinuteRate();
+    }
+
+    private void mark() {
+        long count = getCount();
+        long previous;
+        do {
+            previous = marked.get();
+            if (count <= previous)
+                return;
+        } while (!marked.compareAndSet(previous, count));
+        meter.mark(count - previous);
+    }
+}
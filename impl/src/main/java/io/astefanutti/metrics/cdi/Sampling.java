@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.inject.Vetoed;
+
+// The sampling of the invocations of a timed constructor or method, either one in every N invocations or each
+// invocation with a given probability
+@Vetoed
+/* package-private */ final class Sampling {
+
+    static final Sampling NONE = new Sampling(1, 1D);
+
+    final int every;
+
+    final double probability;
+
+    private Sampling(int every, double probability) {
+        this.every = every;
+        this.probability = probability;
+    }
+
+    static Sampling every(int every) {
+        if (every < 1)
+            throw new IllegalArgumentException("Sampling interval must be positive!");
+        return every == 1 ? NONE : new Sampling(every, 1D);
+    }
+
+    static Sampling probability(double probability) {
+        if (!(probability > 0D && probability <= 1D))
+            throw new IllegalArgumentException("Sampling probability must be in the (0, 1] interval!");
+        return probability == 1D ? NONE : new Sampling(1, probability);
+    }
+
+    static Sampling of(MetricSampling sampling) {
+        return sampling.every() != 1 ? every(sampling.every()) : probability(sampling.probability());
+    }
+
+    boolean isEnabled() {
+        return this != NONE;
+    }
+}
@@ -45,6 +45,9 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.useAbsoluteName;
             return of((AnnotatedMember<?>) annotated);
         else if (annotated instanceof AnnotatedParameter)
             return of((AnnotatedParameter<?>) annotated);
+        else if (annotated == null && ip.getMember() != null)
+            // Programmatic injection points may not provide their annotated element
+            return parameters.contains(useAbsoluteName) ? ip.getMember().getName() : MetricRegistry.name(ip.getMember().getDeclaringClass(), ip.getMember().getName());
         else
             throw new IllegalArgumentException("Unable to retrieve metric name for injection point [" + ip + "], only members and parameters are supported");
     }
@@ -65,6 +68,11 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.useAbsoluteName;
         return attribute;
     }
 
+    @Override
+    public boolean isStatic(String attribute) {
+        return true;
+    }
+
     private String of(AnnotatedParameter<?> parameter) {
         if (parameter.isAnnotationPresent(Metric.class)) {
             Metric metric = parameter.getAnnotation(Metric.class);
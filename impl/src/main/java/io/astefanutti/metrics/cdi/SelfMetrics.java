@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+
+import javax.enterprise.inject.Vetoed;
+import javax.interceptor.InvocationContext;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The metrics measuring the overhead of Metrics CDI itself, registered under the reserved prefix when
+// the self-instrumentation is enabled. They are created with the extension so that the boot phases
+// preceding the configuration event get measured, while the other metrics are only updated once enabled
+// so that the steady-state cost of the disabled self-instrumentation is a single volatile read.
+@Vetoed
+/* package-private */ final class SelfMetrics implements MetricSet {
+
+    static final String PREFIX = "io.astefanutti.metrics.cdi";
+
+    // The duration of the deployment phases
+    final Timer index = new Timer();
+
+    final Timer producers = new Timer();
+
+    final Timer eagerRegistration = new Timer();
+
+    // The metric name resolutions that are not cached, the EL evaluations and the bean type hierarchy discoveries
+    final Timer resolutions = new Timer();
+
+    final Timer evaluations = new Timer();
+
+    final Timer discoveries = new Timer();
+
+    final Cache resolver = new Cache();
+
+    final Cache plans = new Cache();
+
+    final Cache injectionPoints = new Cache();
+
+    // The time spent in the interceptors, excluding the intercepted invocations, in nanoseconds.
+    // They are created with the configured reservoir type when enabled and published by the enabled flag.
+    Histogram counted;
+
+    Histogram exceptionMetered;
+
+    Histogram metered;
+
+    Histogram timed;
+
+    // The overhead measurements of the current thread, reused across invocations
+    private final ThreadLocal<Overhead> overhead = new ThreadLocal<Overhead>() {
+        @Override
+        protected Overhead initialValue() {
+            return new Overhead();
+        }
+    };
+
+    private volatile boolean enabled;
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void enable(Class<? extends Reservoir> reservoir) {
+        counted = new Histogram(Reservoirs.reservoir(reservoir));
+        exceptionMetered = new Histogram(Reservoirs.reservoir(reservoir));
+        metered = new Histogram(Reservoirs.reservoir(reservoir));
+        timed = new Histogram(Reservoirs.reservoir(reservoir));
+        enabled = true;
+    }
+
+    // Returns the start time of a measurement or zero if disabled
+    long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    void stop(Timer timer, long start) {
+        if (start != 0L)
+            timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    Overhead overhead() {
+        return overhead.get();
+    }
+
+    // Proceeds with the invocation, excluding the time spent proceeding from the overhead if measured, i.e. not null
+    static Object proceed(InvocationContext context, Overhead overhead) throws Exception {
+        if (overhead == null)
+            return context.proceed();
+
+        long start = System.nanoTime();
+        try {
+            return context.proceed();
+        } finally {
+            overhead.proceeding += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put("boot.index", index);
+        metrics.put("boot.producers", producers);
+        metrics.put("boot.eagerRegistration", eagerRegistration);
+        metrics.put("names.resolutions", resolutions);
+        metrics.put("names.evaluations", evaluations);
+        metrics.put("metadata.discoveries", discoveries);
+        metrics.put("caches.resolver", resolver);
+        metrics.put("caches.plans", plans);
+        metrics.put("caches.injectionPoints", injectionPoints);
+        metrics.put("interceptors.counted.overhead", counted);
+        metrics.put("interceptors.exceptionMetered.overhead", exceptionMetered);
+        metrics.put("interceptors.metered.overhead", metered);
+        metrics.put("interceptors.timed.overhead", timed);
+        return metrics;
+    }
+
+    final class Cache implements MetricSet {
+
+        private final Counter hits = new Counter();
+
+        private final Counter misses = new Counter();
+
+        private Cache() {
+        }
+
+        void hit() {
+            if (enabled)
+                hits.inc();
+        }
+
+        void miss() {
+            if (enabled)
+                misses.inc();
+        }
+
+        @Override
+        public Map<String, Metric> getMetrics() {
+            Map<String, Metric> metrics = new HashMap<>();
+            metrics.put("hits", hits);
+            metrics.put("misses", misses);
+            metrics.put("hitRatio", new RatioGauge() {
+                @Override
+                protected Ratio getRatio() {
+                    return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+                }
+            });
+            return metrics;
+        }
+    }
+
+    // Excludes the time spent proceeding with the invocation from the time spent in the interceptor.
+    // The interceptors of a same invocation are nested so that each one saves the time measured by the enclosing one.
+    static final class Overhead {
+
+        private long proceeding;
+
+        private Overhead() {
+        }
+
+        // Returns the time measured by the enclosing interceptor, to be restored when this one ends
+        long begin() {
+            long saved = proceeding;
+            proceeding = 0L;
+            return saved;
+        }
+
+        void end(Histogram histogram, long start, long saved) {
+            histogram.update(System.nanoTime() - start - proceeding);
+            proceeding = saved;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.inject.Vetoed;
+import javax.enterprise.inject.spi.Annotated;
+import java.lang.reflect.AnnotatedElement;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Collects the tags declared with the @MetricTag and @MetricTags annotations
+@Vetoed
+/* package-private */ final class StaticTags {
+
+    private StaticTags() {
+    }
+
+    // The tags declared on the latter elements override the tags with the same key declared on the former ones
+    static SortedMap<String, String> of(AnnotatedElement... elements) {
+        SortedMap<String, String> tags = new TreeMap<>();
+        for (AnnotatedElement element : elements)
+            add(tags, element.getAnnotation(MetricTag.class), element.getAnnotation(MetricTags.class));
+        return tags;
+    }
+
+    static SortedMap<String, String> of(Annotated annotated) {
+        SortedMap<String, String> tags = new TreeMap<>();
+        add(tags, annotated.getAnnotation(MetricTag.class), annotated.getAnnotation(MetricTags.class));
+        return tags;
+    }
+
+    private static void add(Map<String, String> tags, MetricTag tag, MetricTags container) {
+        if (container != null)
+            for (MetricTag each : container.value())
+                tags.put(each.key(), each.value());
+        if (tag != null)
+            tags.put(tag.key(), tag.value());
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The name of a tagged metric. Metrics CDI registers the tagged metrics with names of the form
+ * {@code name{key1=value1,key2=value2}}, with the tags sorted by key and the {@code \}, {@code ,}, {@code =},
+ * <code>{</code> and <code>}</code> characters of the keys and values escaped with a {@code \}.
+ * This class encodes and decodes such names so that reporters do not have to.
+ */
+public final class TaggedName {
+
+    /**
+     * The value of the parameter tags of the metric recording the invocations whose combination
+     * of argument values exceeds the configured limit.
+     */
+    public static final String OVERFLOW = "overflow";
+
+    private final String name;
+
+    private final SortedMap<String, String> tags;
+
+    private TaggedName(String name, SortedMap<String, String> tags) {
+        this.name = name;
+        this.tags = Collections.unmodifiableSortedMap(tags);
+    }
+
+    /**
+     * Decodes the given registered metric name.
+     *
+     * @param name the registered metric name
+     * @return the decoded metric name, without tags if the name is not tagged
+     * @throws IllegalArgumentException if the tags are malformed
+     */
+    public static TaggedName of(String name) {
+        int start = name.indexOf('{');
+        if (start < 0 || !name.endsWith("}"))
+            return new TaggedName(name, new TreeMap<String, String>());
+
+        SortedMap<String, String> tags = new TreeMap<>();
+        StringBuilder key = new StringBuilder();
+        StringBuilder value = new StringBuilder();
+        StringBuilder token = key;
+        for (int i = start + 1; i < name.length() - 1; i++) {
+            char c = name.charAt(i);
+            if (c == '\\' && i + 1 < name.length() - 1) {
+                token.append(name.charAt(++i));
+            } else if (c == '=' && token == key) {
+                token = value;
+            } else if (c == ',' && token == value) {
+                tags.put(key.toString(), value.toString());
+                key.setLength(0);
+                value.setLength(0);
+                token = key;
+            } else {
+                token.append(c);
+            }
+        }
+        if (token != value)
+            throw new IllegalArgumentException("Malformed tags in metric name [" + name + "]");
+        tags.put(key.toString(), value.toString());
+
+        return new TaggedName(name.substring(0, start), tags);
+    }
+
+    /**
+     * Encodes the given metric name and tags into the registered metric name.
+     *
+     * @param name the metric name
+     * @param tags the tags
+     * @return the registered metric name, or {@code name} if {@code tags} is empty
+     */
+    public static String name(String name, Map<String, String> tags) {
+        if (tags.isEmpty())
+            return name;
+
+        StringBuilder builder = new StringBuilder(name).append('{');
+        for (Map.Entry<String, String> tag : new TreeMap<>(tags).entrySet()) {
+            if (builder.charAt(builder.length() - 1) != '{')
+                builder.append(',');
+            escape(builder, tag.getKey()).append('=');
+            escape(builder, tag.getValue());
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * @return the metric name without the tags
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the tags sorted by key
+     */
+    public SortedMap<String, String> getTags() {
+        return tags;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object)
+            return true;
+        if (!(object instanceof TaggedName))
+            return false;
+        TaggedName other = (TaggedName) object;
+        return name.equals(other.name) && tags.equals(other.tags);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * name.hashCode() + tags.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name(name, tags);
+    }
+
+    private static StringBuilder escape(StringBuilder builder, String token) {
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '\\' || c == ',' || c == '=' || c == '{' || c == '}')
+                builder.append('\\');
+            builder.append(c);
+        }
+        return builder;
+    }
+}
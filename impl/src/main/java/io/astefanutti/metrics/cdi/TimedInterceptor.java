@@ -15,7 +15,6 @@
  */
 package io.astefanutti.metrics.cdi;
 
-import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.annotation.Timed;
 
@@ -34,14 +33,14 @@ import javax.interceptor.AroundTimeout;
 @Priority(Interceptor.Priority.LIBRARY_BEFORE  + 10)
 /* package-private */ class TimedInterceptor {
 
-    private final MetricRegistry registry;
+    private final InvocationPlans plans;
 
-    private final MetricResolver resolver;
+    private final SelfMetrics self;
 
     @Inject
-    private TimedInterceptor(MetricRegistry registry, MetricResolver resolver) {
-        this.registry = registry;
-        this.resolver = resolver;
+    private TimedInterceptor(InvocationPlans plans, MetricsExtension extension) {
+        this.plans = plans;
+        this.self = extension.getSelfMetrics();
     }
 
     @AroundConstruct
@@ -60,16 +59,65 @@ import javax.interceptor.AroundTimeout;
     }
 
     private <E extends Member & AnnotatedElement> Object timedCallable(InvocationContext context, E element) throws Exception {
-        String name = resolver.timed(element).metricName();
-        Timer timer = (Timer) registry.getMetrics().get(name);
-        if (timer == null)
-            throw new IllegalStateException("No timer with name [" + name + "] found in registry [" + registry + "]");
+        if (!self.isEnabled())
+            return time(context, element, null);
 
-        Timer.Context time = timer.time();
+        SelfMetrics.Overhead overhead = self.overhead();
+        long saved = overhead.begin();
+        long start = System.nanoTime();
         try {
-            return context.proceed();
+            return time(context, element, overhead);
         } finally {
-            time.stop();
+            overhead.end(self.timed, start, saved);
+        }
+    }
+
+    private <E extends Member & AnnotatedElement> Object time(InvocationContext context, E element, SelfMetrics.Overhead overhead) throws Exception {
+        InvocationPlans.Plan<Timer> timed = plans.timed(element);
+        if (!timed.enabled)
+            return SelfMetrics.proceed(context, overhead);
+
+        Timer timer = timed.metric(context);
+        if (timer instanceof SampledTimer)
+            return sampledCallable(context, timed, (SampledTimer) timer, overhead);
+
+        final Timer.Context time = timer.time();
+        boolean async = false;
+        try {
+            Object result = SelfMetrics.proceed(context, overhead);
+            // The timer is stopped once the returned stage completes for asynchronous methods
+            async = timed.async && CompletionStages.whenComplete(result, new CompletionStages.Completion() {
+                @Override
+                public void complete(Throwable failure) {
+                    time.stop();
+                }
+            });
+            return result;
+        } finally {
+            if (!async)
+                time.stop();
+        }
+    }
+
+    // Only the sampled invocations read the clock
+    private Object sampledCallable(InvocationContext context, InvocationPlans.Plan<Timer> timed, final SampledTimer timer, SelfMetrics.Overhead overhead) throws Exception {
+        if (!timer.sample())
+            return SelfMetrics.proceed(context, overhead);
+
+        final long start = System.nanoTime();
+        boolean async = false;
+        try {
+            Object result = SelfMetrics.proceed(context, overhead);
+            async = timed.async && CompletionStages.whenComplete(result, new CompletionStages.Completion() {
+                @Override
+                public void complete(Throwable failure) {
+                    timer.record(System.nanoTime() - start);
+                }
+            });
+            return result;
+        } finally {
+            if (!async)
+                timer.record(System.nanoTime() - start);
         }
     }
 }
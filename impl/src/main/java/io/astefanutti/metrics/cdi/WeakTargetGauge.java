@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import javax.enterprise.inject.Vetoed;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// A gauge that calls the gauge method of the live bean instances it references weakly and aggregates their values,
+// so that the gauge does not prevent the bean instances from being garbage collected.
+// Numeric values are summed, as a Long for integral return types and as a Double for other numeric return types,
+// whatever the number of live instances, otherwise the value of the most recently constructed live instance is returned.
+@Vetoed
+/* package-private */ final class WeakTargetGauge implements Gauge<Object> {
+
+    private final String name;
+
+    private final MetricRegistry registry;
+
+    private final Method method;
+
+    private final MethodHandle handle;
+
+    // Null if the gauge method does not return a number
+    private final Class<? extends Number> type;
+
+    private final Queue<WeakReference<Object>> targets = new ConcurrentLinkedQueue<>();
+
+    // Guarded by this
+    private boolean unregistered;
+
+    WeakTargetGauge(String name, MetricRegistry registry, Method method) {
+        this.name = name;
+        this.registry = registry;
+        this.method = method;
+        this.type = numericType(method.getReturnType());
+        method.setAccessible(true);
+        try {
+            // The method handle is not bound to any target so that it does not reference it strongly
+            handle = MethodHandles.lookup().unreflect(method).asType(MethodType.methodType(Object.class, Object.class));
+        } catch (IllegalAccessException cause) {
+            throw new IllegalStateException("Unable to access method [" + method + "]", cause);
+        }
+    }
+
+    // Returns false if the gauge has been unregistered in the meantime, in which case a new gauge must be registered
+    synchronized boolean add(Object target) {
+        if (unregistered)
+            return false;
+
+        purge(null);
+        targets.add(new WeakReference<>(target));
+        return true;
+    }
+
+    // Unregisters the gauge once no live target remains, in which case true is returned
+    synchronized boolean remove(Object target) {
+        purge(target);
+        if (targets.isEmpty() && !unregistered) {
+            unregistered = true;
+            registry.remove(name);
+        }
+        return unregistered;
+    }
+
+    private void purge(Object target) {
+        Iterator<WeakReference<Object>> iterator = targets.iterator();
+        while (iterator.hasNext()) {
+            Object reference = iterator.next().get();
+            if (reference == null || reference == target)
+                iterator.remove();
+        }
+    }
+
+    @Override
+    public Object getValue() {
+        Object value = null;
+        for (WeakReference<Object> reference : targets) {
+            Object target = reference.get();
+            if (target != null)
+                value = aggregate(value, invoke(target));
+        }
+        return value;
+    }
+
+    private Object invoke(Object target) {
+        try {
+            return handle.invokeExact(target);
+        } catch (Throwable cause) {
+            throw new IllegalStateException("Error while calling method [" + method + "]", cause);
+        }
+    }
+
+    private Object aggregate(Object value, Object other) {
+        if (type == null || !(other instanceof Number))
+            return other == null ? value : other;
+        if (Long.class.equals(type))
+            return (value == null ? 0L : (Long) value) + ((Number) other).longValue();
+        return (value == null ? 0.0 : (Double) value) + ((Number) other).doubleValue();
+    }
+
+    private static Class<? extends Number> numericType(Class<?> type) {
+        if (type == long.class || type == int.class || type == short.class || type == byte.class
+            || type == Long.class || type == Integer.class || type == Short.class || type == Byte.class)
+            return Long.class;
+        if (type == double.class || type == float.class || Number.class.isAssignableFrom(type))
+            return Double.class;
+        return null;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.inject.Vetoed;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// The gauges referencing bean instances weakly indexed by bean class
+// so that the bean instances can be removed from their gauges once destroyed.
+@Vetoed
+/* package-private */ final class WeakTargetGauges {
+
+    private final ConcurrentMap<Class<?>, Set<WeakTargetGauge>> gauges = new ConcurrentHashMap<>();
+
+    WeakTargetGauges() {
+    }
+
+    void add(Class<?> bean, WeakTargetGauge gauge) {
+        Set<WeakTargetGauge> set = gauges.get(bean);
+        if (set == null) {
+            set = Collections.newSetFromMap(new ConcurrentHashMap<WeakTargetGauge, Boolean>());
+            Set<WeakTargetGauge> previous = gauges.putIfAbsent(bean, set);
+            if (previous != null)
+                set = previous;
+        }
+        set.add(gauge);
+    }
+
+    void remove(Class<?> bean, Object target) {
+        Set<WeakTargetGauge> set = gauges.get(bean);
+        if (set == null)
+            return;
+
+        for (WeakTargetGauge gauge : set)
+            if (gauge.remove(target))
+                set.remove(gauge);
+    }
+}
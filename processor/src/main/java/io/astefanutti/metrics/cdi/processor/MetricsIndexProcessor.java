@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.processor;
+
+import com.codahale.metrics.annotation.CachedGauge;
+import com.codahale.metrics.annotation.Counted;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Gauge;
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Generates at compile time an index of the members annotated with <i>Metrics</i> annotations along with
+ * their metric names, that Metrics CDI loads at deployment time instead of computing these names reflectively.
+ *
+ * The index is written to the {@value #INDEX} resource, with one entry per line made of the tab-separated:
+ * declaring class binary name, member signature, annotation simple name, metric name and metric absolute name.
+ * Members whose metric name contains an expression are not indexed as their name can only be resolved at runtime.
+ *
+ * The index only replaces the computation of the metric names. The members declaring metrics are still discovered
+ * reflectively at deployment time, as the index does not cover the types compiled without the processor.
+ */
+public class MetricsIndexProcessor extends AbstractProcessor {
+
+    public static final String INDEX = "META-INF/metrics-cdi.index";
+
+    private static final Pattern EXPRESSION = Pattern.compile("[#|$]\\{");
+
+    private static final List<Class<? extends Annotation>> ANNOTATIONS = Arrays.asList(CachedGauge.class, Counted.class, ExceptionMetered.class, Gauge.class, Metered.class, Timed.class);
+
+    private final Set<String> entries = new TreeSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new HashSet<>();
+        for (Class<? extends Annotation> annotation : ANNOTATIONS)
+            types.add(annotation.getName());
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        if (round.processingOver()) {
+            if (!entries.isEmpty())
+                writeIndex();
+        } else {
+            for (Class<? extends Annotation> annotation : ANNOTATIONS)
+                for (Element element : round.getElementsAnnotatedWith(annotation))
+                    indexElement(element, annotation);
+        }
+        // Let other processors handle these annotations
+        return false;
+    }
+
+    private void indexElement(Element element, Class<? extends Annotation> type) {
+        if (element.getKind() == ElementKind.METHOD || element.getKind() == ElementKind.CONSTRUCTOR) {
+            ExecutableElement executable = (ExecutableElement) element;
+            Annotation annotation = element.getAnnotation(type);
+            String name = metricName(annotation);
+            if (isExpression(name))
+                return;
+            String metric = name.isEmpty() ? defaultName(executable, type) : name;
+            addEntry(executable, type, isMetricAbsolute(annotation) ? metric : name(binaryName(declaringType(executable)), metric), metric);
+        } else if (element.getKind().isClass()) {
+            // The annotation applies to the bean constructors and non-private methods that are not annotated themselves
+            TypeElement bean = (TypeElement) element;
+            Annotation annotation = element.getAnnotation(type);
+            String name = metricName(annotation);
+            if (isExpression(name))
+                return;
+            String metric = name.isEmpty() ? bean.getSimpleName().toString() : name;
+            String pkg = processingEnv.getElementUtils().getPackageOf(bean).getQualifiedName().toString();
+            for (Element enclosed : bean.getEnclosedElements()) {
+                if (enclosed.getKind() == ElementKind.METHOD && enclosed.getModifiers().contains(Modifier.PRIVATE)
+                    || enclosed.getKind() != ElementKind.METHOD && enclosed.getKind() != ElementKind.CONSTRUCTOR
+                    || enclosed.getAnnotation(type) != null)
+                    continue;
+                ExecutableElement executable = (ExecutableElement) enclosed;
+                String absolute = name(metric, defaultName(executable, type));
+                addEntry(executable, type, isMetricAbsolute(annotation) ? absolute : name(pkg, metric, defaultName(executable, type)), absolute);
+            }
+        }
+    }
+
+    private void addEntry(ExecutableElement executable, Class<? extends Annotation> type, String name, String absolute) {
+        entries.add(binaryName(declaringType(executable)) + '\t' + signature(executable) + '\t' + type.getSimpleName() + '\t' + name + '\t' + absolute);
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+            try (Writer writer = index.openWriter()) {
+                for (String entry : entries)
+                    writer.append(entry).append('\n');
+            }
+        } catch (IOException cause) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write metrics index [" + INDEX + "]: " + cause.getMessage());
+        }
+    }
+
+    // Same as the runtime member signature: the member name, or <init> for constructors, followed by the erased parameter types
+    private String signature(ExecutableElement executable) {
+        StringBuilder signature = new StringBuilder();
+        signature.append(executable.getKind() == ElementKind.CONSTRUCTOR ? "<init>" : executable.getSimpleName().toString()).append('(');
+        List<? extends VariableElement> parameters = executable.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0)
+                signature.append(',');
+            signature.append(processingEnv.getTypeUtils().erasure(parameters.get(i).asType()).toString());
+        }
+        return signature.append(')').toString();
+    }
+
+    private String defaultName(ExecutableElement executable, Class<? extends Annotation> type) {
+        String member = executable.getKind() == ElementKind.CONSTRUCTOR ? declaringType(executable).getSimpleName().toString() : executable.getSimpleName().toString();
+        if (ExceptionMetered.class.equals(type))
+            return name(member, ExceptionMetered.DEFAULT_NAME_SUFFIX);
+        else
+            return member;
+    }
+
+    private TypeElement declaringType(ExecutableElement executable) {
+        return (TypeElement) executable.getEnclosingElement();
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private static boolean isExpression(String name) {
+        return EXPRESSION.matcher(name).find();
+    }
+
+    // Same as MetricRegistry.name
+    private static String name(String... names) {
+        StringBuilder builder = new StringBuilder();
+        for (String name : names) {
+            if (name != null && !name.isEmpty()) {
+                if (builder.length() > 0)
+                    builder.append('.');
+                builder.append(name);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String metricName(Annotation annotation) {
+        if (annotation instanceof CachedGauge)
+            return ((CachedGauge) annotation).name();
+        else if (annotation instanceof Counted)
+            return ((Counted) annotation).name();
+        else if (annotation instanceof ExceptionMetered)
+            return ((ExceptionMetered) annotation).name();
+        else if (annotation instanceof Gauge)
+            return ((Gauge) annotation).name();
+        else if (annotation instanceof Metered)
+            return ((Metered) annotation).name();
+        else
+            return ((Timed) annotation).name();
+    }
+
+    private static boolean isMetricAbsolute(Annotation annotation) {
+        if (annotation instanceof CachedGauge)
+            return ((CachedGauge) annotation).absolute();
+        else if (annotation instanceof Counted)
+            return ((Counted) annotation).absolute();
+        else if (annotation instanceof ExceptionMetered)
+            return ((ExceptionMetered) annotation).absolute();
+        else if (annotation instanceof Gauge)
+            return ((Gauge) annotation).absolute();
+        else if (annotation instanceof Metered)
+            return ((Metered) annotation).absolute();
+        else
+            return ((Timed) annotation).absolute();
+    }
+}